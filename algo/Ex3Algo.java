@@ -1,8 +1,11 @@
 package assignments.Ex3.algo;
 
+import assignments.Ex3.utils.CompactPath;
+import assignments.Ex3.utils.DistanceTable;
 import assignments.Ex3.utils.Index2D;
 import assignments.Ex3.utils.Map;
 import assignments.Ex3.utils.Pixel2D;
+import assignments.Ex3.utils.SparseDistances;
 import exe.ex3.game.Game;
 import exe.ex3.game.GhostCL;
 import exe.ex3.game.PacManAlgo;
@@ -57,16 +60,13 @@ public class Ex3Algo implements PacManAlgo {
         String posString = game.getPos(0);
         Pixel2D pacmanPos = parsePosition(posString);
 
-        //Step 2: Construct Safe Map (Virtual Walls)
-        int[][] safeBoard = cloneBoard(board);
-        markGhostsAsWalls(game, safeBoard);
-
-        Map safeMap = new Map(safeBoard);
-        safeMap.setCyclic(game.isCyclic());
-
         Map regularMap = new Map(board);
         regularMap.setCyclic(game.isCyclic());
 
+        //Step 2: Construct Safe Map (Virtual Walls) - a fork copies only the tiles around the ghosts
+        Map safeMap = regularMap.fork();
+        markGhostsAsWalls(game, safeMap);
+
         // Step 3: Target Locking Logic
         // Check if current target is still valid (contains food)
         if (_targetFood != null) {
@@ -83,30 +83,28 @@ public class Ex3Algo implements PacManAlgo {
 
         // Step 4: Primary Strategy
         if (_targetFood != null) {
-            Pixel2D[] path = safeMap.shortestPath(pacmanPos, _targetFood, 1);
-            if (path != null && path.length > 1) {
-                return getDirection(pacmanPos, path[1]);
+            CompactPath path = safeMap.compactPath(pacmanPos, _targetFood, 1);
+            if (path != null && path.length() > 1) {
+                return getDirection(pacmanPos, path.nextCell());
             }
         }
 
         // Step 5: Fallbacks (If Safe Path Fails)
 
-        // Immediate Threat? Panic!
-        if (isGhostTooClose(game, pacmanPos)) {
-            return emergencyEscape(game, regularMap, pacmanPos);
+        // Immediate Threat? Panic! (maze distances come from the cached table of this wall layout)
+        DistanceTable table = DistanceTable.of(regularMap, 1);
+        if (isGhostTooClose(game, table, regularMap, pacmanPos)) {
+            return emergencyEscape(game, table, regularMap, pacmanPos);
         }
 
         // Optimistic Search (Ignore virtual walls, just reach food)
-        Pixel2D optimisticFood = findBestFood(regularMap, pacmanPos);
-        if (optimisticFood != null) {
-            Pixel2D[] path = regularMap.shortestPath(pacmanPos, optimisticFood, 1);
-            if (path != null && path.length > 1) {
-                return getDirection(pacmanPos, path[1]);
-            }
+        Pixel2D[] optimisticPath = findBestFoodPath(regularMap, pacmanPos);
+        if (optimisticPath != null && optimisticPath.length > 1) {
+            return getDirection(pacmanPos, optimisticPath[1]);
         }
 
         // Absolute Fallback
-        return emergencyEscape(game, regularMap, pacmanPos);
+        return emergencyEscape(game, table, regularMap, pacmanPos);
     }
 
     // HELPER METHODS
@@ -114,23 +112,58 @@ public class Ex3Algo implements PacManAlgo {
     /**
      * Checks if any ghost is dangerously close to Pacman.
      * 1. Get all ghosts from the game.
-     * 2. Loop through each ghost and calculate its 2D distance to Pacman.
-     * 3. Return true if ANY ghost is within the limit distance.
+     * 2. With a distance table: look up the distance from Pacman to the closest ghost (see distanceToClosestGhost).
+     * 3. Without one (huge boards): explore only the cells within PANIC_DISTANCE of Pacman
+     * (a depth-limited BFS) and look for a ghost among them.
+     * 4. Return true if a ghost is within the limit distance.
      *
      * @param game      The current game state.
+     * @param table     The distance table of the board (null if the board is too large for one).
+     * @param map       The regular map (walls = 1).
      * @param pacmanPos The current pixel position of Pacman.
      * @return true if a ghost is too close, false otherwise.
      */
-    private boolean isGhostTooClose(PacmanGame game, Pixel2D pacmanPos) {
+    private boolean isGhostTooClose(PacmanGame game, DistanceTable table, Map map, Pixel2D pacmanPos) {
         GhostCL[] ghosts = game.getGhosts(0);
         if (ghosts == null) return false;
+        if (table != null) return distanceToClosestGhost(ghosts, table, map, pacmanPos) <= PANIC_DISTANCE;
+        SparseDistances near = map.allDistance(pacmanPos, 1, PANIC_DISTANCE);
         for (GhostCL g : ghosts) {
-            Pixel2D gPos = parsePosition(g.getPos(0));
-            if (pacmanPos.distance2D(gPos) <= PANIC_DISTANCE) return true;
+            if (near.contains(parsePosition(g.getPos(0)))) return true;
         }
         return false;
     }
 
+    /**
+     * Calculates the distance from a cell to the closest ghost.
+     * 1. With a distance table: O(1) maze distance per ghost (walls and wrap included),
+     * a ghost that cannot reach the cell does not count.
+     * 2. Without one (huge boards): one BFS from the cell to all the ghosts at once
+     * (see Map.shortestPaths), which stops when the last reachable ghost is found.
+     *
+     * @param ghosts The active ghosts.
+     * @param table  The distance table of the board, or null.
+     * @param map    The regular map (walls = 1).
+     * @param p      The cell.
+     * @return The distance to the closest ghost (Double.MAX_VALUE if none can reach it).
+     */
+    private double distanceToClosestGhost(GhostCL[] ghosts, DistanceTable table, Map map, Pixel2D p) {
+        Pixel2D[] ghostPos = new Pixel2D[ghosts.length];
+        for (int i = 0; i < ghosts.length; i++) ghostPos[i] = parsePosition(ghosts[i].getPos(0));
+        double ans = Double.MAX_VALUE;
+        if (table == null) {
+            for (int dist : map.shortestPaths(p, ghostPos, 1)) {
+                if (dist >= 0 && dist < ans) ans = dist;
+            }
+            return ans;
+        }
+        for (Pixel2D gPos : ghostPos) {
+            double dist = table.distance(gPos, p);
+            if (dist >= 0 && dist < ans) ans = dist;
+        }
+        return ans;
+    }
+
     /**
      * Expands the walls around ghosts to create "Safety Zones".
      * 1. Loop through all active ghosts.
@@ -139,13 +172,13 @@ public class Ex3Algo implements PacManAlgo {
      * 4. Change the value of those coordinates to 1 (Wall).
      *
      * @param game   The current game state.
-     * @param board  The 2D array representation of the board (to be modified).
+     * @param map    The safe map (to be modified).
      */
-    private void markGhostsAsWalls(PacmanGame game, int[][] board) {
+    private void markGhostsAsWalls(PacmanGame game, Map map) {
         GhostCL[] ghosts = game.getGhosts(0);
         if (ghosts == null) return;
-        int w = board.length;
-        int h = board[0].length;
+        int w = map.getWidth();
+        int h = map.getHeight();
         for (GhostCL g : ghosts) {
             Pixel2D gPos = parsePosition(g.getPos(0));
             int gx = gPos.getX();
@@ -154,7 +187,7 @@ public class Ex3Algo implements PacManAlgo {
                 for (int dy = -SAFETY_RADIUS; dy <= SAFETY_RADIUS; dy++) {
                     int x = gx + dx; int y = gy + dy;
                     if (game.isCyclic()) { x = (x + w) % w; y = (y + h) % h; }
-                    if (x >= 0 && x < w && y >= 0 && y < h) { board[x][y] = 1; }
+                    if (x >= 0 && x < w && y >= 0 && y < h) { map.setPixel(x, y, 1); }
                 }
             }
         }
@@ -163,32 +196,28 @@ public class Ex3Algo implements PacManAlgo {
     /**
      * Calculates the best move to maximize distance from the closest threat.
      * 1. Iterate through all 4 possible movement directions.
-     * 2. Determine the next pixel for each direction.
-     * 3. If the next pixel is NOT a wall:
-     * a. Calculate its distance to the closest ghost.
+     * 2. Determine the next pixel for each direction (see nextPixel).
+     * 3. If the move stays on the board and the next pixel is NOT a wall:
+     * a. Calculate its distance to the closest ghost (see distanceToClosestGhost).
      * b. If this distance is the largest found so far, save this direction.
      * 4. Return the direction that maximizes survival chances.
      *
      * @param game      The current game state.
+     * @param table     The distance table of the board (null if the board is too large for one).
      * @param map       The map object for collision checking.
      * @param pacmanPos The current position of Pacman.
      * @return The best direction integer (Game.UP, DOWN, LEFT, RIGHT).
      */
-    private int emergencyEscape(PacmanGame game, Map map, Pixel2D pacmanPos) {
+    private int emergencyEscape(PacmanGame game, DistanceTable table, Map map, Pixel2D pacmanPos) {
         GhostCL[] ghosts = game.getGhosts(0);
         if(ghosts == null) return Game.UP;
         double maxDist = -1;
         int bestDir = Game.UP;
         int[] dirs = {Game.UP, Game.DOWN, Game.LEFT, Game.RIGHT};
         for(int d : dirs) {
-            Pixel2D next = nextPixel(pacmanPos, d, map.getWidth(), map.getHeight());
-            if(map.getPixel(next) != 1) {
-                double distToClosestGhost = Double.MAX_VALUE;
-                for(GhostCL g : ghosts) {
-                    Pixel2D gPos = parsePosition(g.getPos(0));
-                    double dist = next.distance2D(gPos);
-                    if(dist < distToClosestGhost) distToClosestGhost = dist;
-                }
+            Pixel2D next = nextPixel(pacmanPos, d, map);
+            if(next != null && map.getPixel(next) != 1) {
+                double distToClosestGhost = distanceToClosestGhost(ghosts, table, map, next);
                 if(distToClosestGhost > maxDist) {
                     maxDist = distToClosestGhost;
                     bestDir = d;
@@ -199,55 +228,33 @@ public class Ex3Algo implements PacManAlgo {
     }
 
     /**
-     * Scans the map to find the most optimal food target based on distance and value.
-     * 1. Iterate over every cell in the 2D grid.
-     * 2. If the cell contains an item (>1):
-     * a. Calculate the BFS shortest path to it.
-     * b. Base score = Path Length.
-     * c. Subtract BONUS if the item is special (e.g., Apple).
-     * 3. Update the best target if this score is the lowest (most optimal).
+     * Finds the most optimal food target based on distance and value.
+     * 1. Run a single BFS from the start (see findBestFoodPath).
+     * 2. Return the last cell of the chosen path.
      *
      * @param map   The map to search on (Safe or Regular).
      * @param start The starting point (Pacman's position).
      * @return The Pixel2D coordinates of the best food target, or null if none found.
      */
     private Pixel2D findBestFood(Map map, Pixel2D start) {
-        Pixel2D bestTarget = null;
-        double minScore = Double.MAX_VALUE;
-        for (int x = 0; x < map.getWidth(); x++) {
-            for (int y = 0; y < map.getHeight(); y++) {
-                int pixelValue = map.getPixel(x, y);
-                if (pixelValue > 1) { // Anything that is not Wall(1) or Empty(0)
-                    Pixel2D target = new Index2D(x, y);
-                    Pixel2D[] path = map.shortestPath(start, target, 1);
-                    if (path != null) {
-                        double score = path.length;
-                        if (pixelValue > 3) score -= SPECIAL_FOOD_BONUS;
-                        if (score < minScore) {
-                            minScore = score;
-                            bestTarget = target;
-                        }
-                    }
-                }
-            }
-        }
-        return bestTarget;
+        Pixel2D[] path = findBestFoodPath(map, start);
+        return (path == null) ? null : path[path.length - 1];
     }
 
     /**
-     * Creates a deep copy of a 2D integer array.
-     * 1. Initialize a new 2D array with identical dimensions.
-     * 2. Loop through each row and copy its contents using arraycopy.
+     * Finds the path to the most optimal food target with a single BFS.
+     * 1. Expand a BFS from the start, level by level.
+     * 2. Every cell containing an item (>1) is a candidate:
+     * a. Base score = BFS distance.
+     * b. Subtract BONUS if the item is special (e.g., Apple).
+     * 3. Stop once no deeper cell can beat the best score, and return the path to it.
      *
-     * @param board The original 2D array.
-     * @return A completely independent clone of the board.
+     * @param map   The map to search on (Safe or Regular).
+     * @param start The starting point (Pacman's position).
+     * @return The path from start to the best food target, or null if none found.
      */
-    private int[][] cloneBoard(int[][] board) {
-        int[][] newBoard = new int[board.length][board[0].length];
-        for(int i=0; i<board.length; i++) {
-            System.arraycopy(board[i], 0, newBoard[i], 0, board[i].length);
-        }
-        return newBoard;
+    private Pixel2D[] findBestFoodPath(Map map, Pixel2D start) {
+        return map.nearestPath(start, v -> v > 1, v -> (v > 3) ? SPECIAL_FOOD_BONUS : 0, SPECIAL_FOOD_BONUS, 1);
     }
 
     /**
@@ -264,24 +271,25 @@ public class Ex3Algo implements PacManAlgo {
     }
 
     /**
-     * Calculates the adjacent pixel given a direction, supporting cyclic boards.
+     * Calculates the adjacent pixel given a direction.
      * 1. Adjust X or Y based on the given direction.
-     * 2. Wrap coordinates around to the opposite side if they exceed board limits.
+     * 2. On a cyclic map, wrap coordinates around to the opposite side if they exceed board limits;
+     * otherwise a step off the board has no pixel.
      *
      * @param p   The starting pixel.
      * @param dir The direction to move.
-     * @param w   Board width.
-     * @param h   Board height.
-     * @return The calculated next Pixel2D.
+     * @param map The map (its size and cyclic flag).
+     * @return The calculated next Pixel2D, or null if the step leaves a non-cyclic board.
      */
-    private Pixel2D nextPixel(Pixel2D p, int dir, int w, int h) {
+    private Pixel2D nextPixel(Pixel2D p, int dir, Map map) {
+        int w = map.getWidth(), h = map.getHeight();
         int x = p.getX(), y = p.getY();
         if (dir == Game.UP) y++;
         else if (dir == Game.DOWN) y--;
         else if (dir == Game.RIGHT) x++;
         else if (dir == Game.LEFT) x--;
-        if (x < 0) x = w - 1; else if (x >= w) x = 0;
-        if (y < 0) y = h - 1; else if (y >= h) y = 0;
+        if (map.isCyclic()) { x = (x + w) % w; y = (y + h) % h; }
+        else if (x < 0 || x >= w || y < 0 || y >= h) return null;
         return new Index2D(x, y);
     }
 
@@ -1,5 +1,7 @@
 package assignments.Ex3.algo;
 
+import assignments.Ex3.utils.DistanceTable;
+import assignments.Ex3.utils.Map;
 import exe.ex3.game.Game;
 import exe.ex3.game.GhostCL;
 import exe.ex3.game.PacmanGame;
@@ -159,6 +161,89 @@ class Ex3AlgoTest {
         assertEquals(Game.DOWN, move, "Should run away from ghost");
     }
 
+    /**
+     * TEST 5: Emergency Escape At A Border
+     * Scenario:
+     * - Non-cyclic board, Pacman at (0,2) on the left border.
+     * - Ghost at (1,2) [RIGHT], right next to him.
+     *
+     * Logic:
+     * LEFT would wrap to (4,2), the farthest cell from the ghost, but the board does not wrap.
+     * Pacman must run UP or DOWN along the border.
+     */
+    @Test
+    void testEscapeAtNonCyclicBorder() {
+        Ex3Algo algo = new Ex3Algo();
+        StubGame game = new StubGame();
+
+        game.setBoard(new int[5][5]);
+        game.setPos("0,2,0");
+        game.setGhosts(new StubGhost[]{ new StubGhost("1,2,0") });
+
+        int move = algo.move(game);
+        assertTrue(move == Game.UP || move == Game.DOWN, "Should not step off a non-cyclic board");
+    }
+
+    /**
+     * TEST 6: Panic Uses Maze Distance (Distance Table)
+     * Scenario:
+     * - Non-cyclic 5x6 board, a wall column at x=2 open only at the top row.
+     * - Pacman at (1,1), Ghost at (3,1) on the other side of the wall.
+     * - Food at (4,1), inside the ghost's safety zone.
+     *
+     * Logic:
+     * The ghost is 2 cells away in a straight line but 10 moves away through the maze,
+     * so Pacman does not panic. The safe map hides the food, so he takes the optimistic
+     * path over the top of the wall (UP). With the straight-line distance he escaped LEFT.
+     */
+    @Test
+    void testPanicUsesMazeDistance() {
+        int[][] board = wallBetween(6);
+        assertNotNull(DistanceTable.of(new Map(board), 1), "A small board has a distance table");
+        assertEquals(Game.UP, moveWithGhost(board, "1,1,0", "3,1,0"), "The ghost is far through the maze");
+    }
+
+    /**
+     * TEST 7: Large Boards Without A Distance Table
+     * Scenario:
+     * - The boards of TEST 4 and TEST 6, grown past DistanceTable.MAX_CELLS walkable cells.
+     *
+     * Logic:
+     * Without a table the panic check runs a depth-limited BFS and the escape a one-to-many
+     * BFS (Map.shortestPaths). They must make the same decisions as the table.
+     */
+    @Test
+    void testFallbackWithoutTable() {
+        int[][] open = new int[60][60];
+        assertNull(DistanceTable.of(new Map(open), 1), "A large board has no distance table");
+        assertEquals(Game.DOWN, moveWithGhost(new int[5][5], "1,1,0", "1,2,0"), "Escape with the table");
+        assertEquals(Game.DOWN, moveWithGhost(open, "1,1,0", "1,2,0"), "Escape without the table");
+
+        int[][] walled = wallBetween(600);
+        assertNull(DistanceTable.of(new Map(walled), 1), "A large board has no distance table");
+        assertEquals(Game.UP, moveWithGhost(walled, "1,1,0", "3,1,0"), "The ghost is far through the maze");
+    }
+
+    /**
+     * Builds the board of TEST 6: width 5, a wall column at x=2 open only at the top row,
+     * and food at (4,1).
+     */
+    private static int[][] wallBetween(int height) {
+        int[][] board = new int[5][height];
+        for (int y = 0; y < height - 1; y++) board[2][y] = 1;
+        board[4][1] = 4;
+        return board;
+    }
+
+    /** Runs one move of a fresh algo with Pacman at pos and one ghost. */
+    private static int moveWithGhost(int[][] board, String pos, String ghost) {
+        StubGame game = new StubGame();
+        game.setBoard(board);
+        game.setPos(pos);
+        game.setGhosts(new StubGhost[]{ new StubGhost(ghost) });
+        return new Ex3Algo().move(game);
+    }
+
     // =================================================================
     //                 STUB CLASSES (Mocks for Testing)
     // =================================================================
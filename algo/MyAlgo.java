@@ -2,6 +2,7 @@ package assignments.Ex3.algo;
 
 import assignments.Ex3.utils.Index2D;
 import assignments.Ex3.utils.Map;
+import assignments.Ex3.utils.Map2D;
 import assignments.Ex3.utils.Pixel2D;
 import exe.ex3.game.Game;
 import exe.ex3.game.GhostCL;
@@ -34,63 +35,67 @@ public class MyAlgo implements PacManAlgo {
         String posString = game.getPos(0);
         Pixel2D pacmanPos = parsePosition(posString);
 
-        //Step 2: Construct Safe Map (Virtual Walls)
-        int[][] safeBoard = cloneBoard(board);
-        markGhostsAsWalls(game, safeBoard);
-
-        Map safeMap = new Map(safeBoard);
-        safeMap.setCyclic(game.isCyclic());
-
         Map regularMap = new Map(board);
         regularMap.setCyclic(game.isCyclic());
 
+        //Step 2: Construct Safe Map (Virtual Walls) - a fork copies only the tiles around the ghosts
+        Map safeMap = regularMap.fork();
+        markGhostsAsWalls(game, safeMap);
+
         // Step 3: Primary Strategy - Safe Pathfinding
         // We calculate the best food FRESH every turn to avoid looping due to map errors
-        Pixel2D bestFood = findBestFood(safeMap, pacmanPos);
-
-        if (bestFood != null) {
-            Pixel2D[] path = safeMap.shortestPath(pacmanPos, bestFood, 1);
-            if (path != null && path.length > 1) {
-                return getDirection(pacmanPos, path[1]);
-            }
+        Pixel2D[] path = findBestFood(safeMap, pacmanPos);
+        if (path != null && path.length > 1) {
+            return getDirection(pacmanPos, path[1]);
         }
 
         //Step 4: Threat Assessment & Fallback
-        if (isGhostTooClose(game, pacmanPos)) {
-            return emergencyEscape(game, regularMap, pacmanPos);
+        // One multi-source BFS gives the maze distance to the nearest ghost for every cell
+        Map2D ghostDist = ghostDistances(game, regularMap);
+        if (isGhostTooClose(ghostDist, pacmanPos)) {
+            return emergencyEscape(ghostDist, regularMap, pacmanPos);
         }
 
         //Step 5: Secondary Strategy - Optimistic Pathfinding
-        Pixel2D optimisticFood = findBestFood(regularMap, pacmanPos);
-        if (optimisticFood != null) {
-            Pixel2D[] path = regularMap.shortestPath(pacmanPos, optimisticFood, 1);
-            if (path != null && path.length > 1) {
-                return getDirection(pacmanPos, path[1]);
-            }
+        Pixel2D[] optimisticPath = findBestFood(regularMap, pacmanPos);
+        if (optimisticPath != null && optimisticPath.length > 1) {
+            return getDirection(pacmanPos, optimisticPath[1]);
         }
 
         // Absolute Fallback
-        return emergencyEscape(game, regularMap, pacmanPos);
+        return emergencyEscape(ghostDist, regularMap, pacmanPos);
     }
 
     // HELPER METHODS
+    /**
+     * Builds the ghost distance field of the current tick.
+     * 1. Collect the positions of all active ghosts.
+     * 2. Run a single multi-source BFS from all of them on the regular map (walls = 1).
+     * * @param game The current game state.
+     * @param map  The regular (wall-only) map.
+     * @return A map holding, for every cell, the maze distance to the nearest ghost (-1 if none reaches it),
+     * or null if there are no ghosts.
+     */
+    private Map2D ghostDistances(PacmanGame game, Map map) {
+        GhostCL[] ghosts = game.getGhosts(0);
+        if (ghosts == null) return null;
+        Pixel2D[] ghostPos = new Pixel2D[ghosts.length];
+        for (int i = 0; i < ghosts.length; i++) ghostPos[i] = parsePosition(ghosts[i].getPos(0));
+        return map.allDistance(ghostPos, 1);
+    }
+
     /**
      * Checks if any ghost is within the panic distance.
-     * 1. Retrieve all active ghosts.
-     * 2. Loop through each ghost and calculate its 2D distance to Pacman.
-     * 3. If any ghost is closer than limitDist, return true.
-     * * @param game      The current game state.
+     * 1. Look up Pacman's cell in the ghost distance field (maze distance, walls and wrap included).
+     * 2. If the nearest ghost is closer than PANIC_DISTANCE, return true.
+     * * @param ghostDist The ghost distance field of this tick (null if there are no ghosts).
      * @param pacmanPos Pacman's current coordinates.
      * @return true if a threat is near, false otherwise.
      */
-    private boolean isGhostTooClose(PacmanGame game, Pixel2D pacmanPos) {
-        GhostCL[] ghosts = game.getGhosts(0);
-        if (ghosts == null) return false;
-        for (GhostCL g : ghosts) {
-            Pixel2D gPos = parsePosition(g.getPos(0));
-            if (pacmanPos.distance2D(gPos) <= PANIC_DISTANCE) return true;
-        }
-        return false;
+    private boolean isGhostTooClose(Map2D ghostDist, Pixel2D pacmanPos) {
+        if (ghostDist == null) return false;
+        int dist = ghostDist.getPixel(pacmanPos);
+        return dist >= 0 && dist <= PANIC_DISTANCE;
     }
 
     /**
@@ -100,19 +105,19 @@ public class MyAlgo implements PacManAlgo {
      * 3. Apply modulo arithmetic to handle cyclic wrap-around on board edges.
      * 4. Set the board value at those coordinates to 1 (Wall).
      * * @param game   The current game state.
-     * @param board  The 2D map array to modify.
+     * @param map    The safe map to modify.
      */
-    private void markGhostsAsWalls(PacmanGame game, int[][] board) {
+    private void markGhostsAsWalls(PacmanGame game, Map map) {
         GhostCL[] ghosts = game.getGhosts(0);
         if (ghosts == null) return;
-        int w = board.length; int h = board[0].length;
+        int w = map.getWidth(); int h = map.getHeight();
         for (GhostCL g : ghosts) {
             Pixel2D gPos = parsePosition(g.getPos(0));
             for (int dx = -SAFETY_RADIUS; dx <= SAFETY_RADIUS; dx++) {
                 for (int dy = -SAFETY_RADIUS; dy <= SAFETY_RADIUS; dy++) {
                     int x = (gPos.getX() + dx + w) % w;
                     int y = (gPos.getY() + dy + h) % h;
-                    board[x][y] = 1;
+                    map.setPixel(x, y, 1);
                 }
             }
         }
@@ -122,17 +127,16 @@ public class MyAlgo implements PacManAlgo {
      * Calculates the safest adjacent move to maximize distance from ghosts.
      * 1. Randomize the checking order of directions to prevent getting stuck in loops.
      * 2. For every valid adjacent cell (not a wall):
-     * a. Measure the distance from that cell to the nearest ghost.
+     * a. Look up its maze distance to the nearest ghost in the ghost distance field.
      * 3. Pick the direction that results in the largest distance from any ghost.
-     * * @param game      The current game state.
+     * * @param ghostDist The ghost distance field of this tick (null if there are no ghosts).
      * @param map       The logical map to check for walls.
      * @param pacmanPos Pacman's current coordinates.
      * @return The integer code for the safest direction (UP, DOWN, LEFT, RIGHT).
      */
-    private int emergencyEscape(PacmanGame game, Map map, Pixel2D pacmanPos) {
-        GhostCL[] ghosts = game.getGhosts(0);
-        if(ghosts == null) return Game.UP;
-        double maxDist = -1; int bestDir = Game.UP;
+    private int emergencyEscape(Map2D ghostDist, Map map, Pixel2D pacmanPos) {
+        if(ghostDist == null) return Game.UP;
+        int maxDist = -1; int bestDir = Game.UP;
         int[] dirs = {Game.UP, Game.DOWN, Game.LEFT, Game.RIGHT};
 
         // Randomize checking order to break symmetrical loops
@@ -141,12 +145,8 @@ public class MyAlgo implements PacManAlgo {
         for(int d : dirs) {
             Pixel2D next = nextPixel(pacmanPos, d, map.getWidth(), map.getHeight());
             if(map.getPixel(next) != 1) {
-                double distToClosestGhost = Double.MAX_VALUE;
-                for(GhostCL g : ghosts) {
-                    Pixel2D gPos = parsePosition(g.getPos(0));
-                    double dist = next.distance2D(gPos);
-                    if(dist < distToClosestGhost) distToClosestGhost = dist;
-                }
+                int distToClosestGhost = ghostDist.getPixel(next);
+                if(distToClosestGhost < 0) distToClosestGhost = Integer.MAX_VALUE; // No ghost can reach it
                 if(distToClosestGhost > maxDist) { maxDist = distToClosestGhost; bestDir = d; }
             }
         }
@@ -155,47 +155,17 @@ public class MyAlgo implements PacManAlgo {
 
 
     /**
-     * Scans the map to find the most optimal food target.
-     * 1. Iterate through the entire 2D grid.
-     * 2. If a cell contains a Coin (4) or Apple (5), calculate the BFS shortest path to it.
-     * 3. Base score = Path length. Subtract SPECIAL_FOOD_BONUS if it's an Apple.
-     * 4. Keep updating and return the target with the lowest score.
+     * Finds the path to the most optimal food target with a single BFS.
+     * 1. Expand a BFS from Pacman's position, level by level.
+     * 2. Every Coin (4) or Apple (5) is a candidate: score = BFS distance, minus SPECIAL_FOOD_BONUS for an Apple.
+     * 3. Stop once no deeper cell can beat the best score, and return the path to it.
      * * @param map   The map to search on (Safe or Regular).
      * @param start Pacman's current position.
-     * @return A Pixel2D object representing the best food location, or null if none found.
-     */
-    private Pixel2D findBestFood(Map map, Pixel2D start) {
-        Pixel2D bestTarget = null;
-        double minScore = Double.MAX_VALUE;
-        for (int x = 0; x < map.getWidth(); x++) {
-            for (int y = 0; y < map.getHeight(); y++) {
-                int pixelValue = map.getPixel(x, y);
-                if (pixelValue >= 4) { // 4=Coin, 5=Apple
-                    Pixel2D target = new Index2D(x, y);
-                    Pixel2D[] path = map.shortestPath(start, target, 1);
-                    if (path != null) {
-                        double score = path.length;
-                        // Prioritize Apple
-                        if (pixelValue == 5) score -= SPECIAL_FOOD_BONUS;
-                        if (score < minScore) { minScore = score; bestTarget = target; }
-                    }
-                }
-            }
-        }
-        return bestTarget;
-    }
-
-    /**
-     * Creates a deep copy of a 2D integer array to prevent mutating the original state.
-     * 1. Create a new array with the same dimensions.
-     * 2. Use System.array copy for fast row-by-row duplication.
-     * * @param board The original game board.
-     * @return A fresh, independent copy of the board.
+     * @return The path from start to the best food location, or null if none found.
      */
-    private int[][] cloneBoard(int[][] board) {
-        int[][] newBoard = new int[board.length][board[0].length];
-        for(int i=0; i<board.length; i++) System.arraycopy(board[i], 0, newBoard[i], 0, board[i].length);
-        return newBoard;
+    private Pixel2D[] findBestFood(Map map, Pixel2D start) {
+        // 4=Coin, 5=Apple (Prioritize Apple)
+        return map.nearestPath(start, v -> v >= 4, v -> (v == 5) ? SPECIAL_FOOD_BONUS : 0, SPECIAL_FOOD_BONUS, 1);
     }
 
     /**
@@ -157,6 +157,42 @@ class MyAlgoTest {
         assertEquals(Game.DOWN, move, "Pacman should run DOWN away from the ghost");
     }
 
+    /**
+     * TEST 5: Ghost Tracking Across Ticks
+     * Scenario:
+     * - A vertical corridor (x=1) between two wall columns, Pacman at (1,3).
+     * - Tick 1: Ghost at (1,5) [2 cells UP] -> escape DOWN.
+     * - Tick 2: the same algo, Ghost moved to (1,1) [2 cells DOWN] -> escape UP.
+     * - Tick 3: the same algo on a new board of the same size, with a wall at (1,4)
+     *   and side exits at y=3 -> escape LEFT or RIGHT (UP is now a wall).
+     *
+     * Logic:
+     * Every decision reads the ghosts and the walls of its own tick.
+     */
+    @Test
+    void testGhostFieldFollowsGhost() {
+        MyAlgo algo = new MyAlgo();
+        StubGame game = new StubGame();
+
+        int[][] board = new int[3][7];
+        for (int y = 0; y < 7; y++) { board[0][y] = 1; board[2][y] = 1; }
+        game.setBoard(board);
+        game.setPos("1,3,0");
+
+        game.setGhosts(new StubGhost[]{ new StubGhost("1,5,0") });
+        assertEquals(Game.DOWN, algo.move(game), "Pacman should run DOWN away from the ghost");
+
+        game.setGhosts(new StubGhost[]{ new StubGhost("1,1,0") });
+        assertEquals(Game.UP, algo.move(game), "Pacman should run UP once the ghost is below");
+
+        int[][] next = new int[3][7];
+        for (int y = 0; y < 7; y++) { next[0][y] = 1; next[2][y] = 1; }
+        next[0][3] = 0; next[2][3] = 0; next[1][4] = 1;
+        game.setBoard(next);
+        int move = algo.move(game);
+        assertTrue(move == Game.LEFT || move == Game.RIGHT, "Pacman should use the new side exits, not the new wall");
+    }
+
     // =================================================================
     //                 STUB CLASSES (Mocks for Testing)
     // =================================================================
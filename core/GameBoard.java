@@ -1,19 +1,30 @@
 package assignments.Ex3.core;
 
+import assignments.Ex3.utils.CorridorGraph;
+import assignments.Ex3.utils.Map;
+import assignments.Ex3.utils.MapFile;
+import assignments.Ex3.utils.NeighborTable;
 import exe.ex3.game.StdDraw;
 import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Class GameBoard
  * 1. Purpose: Manages the logical grid (2D array) of the game.
  * 2. Data: Stores integers representing Walls, Coins, Apples, or Empty space.
  * 3. Functionality:
- * - Parses a String map into the 2D array.
+ * - Parses a String map into the 2D array, or loads/saves a binary map file (see MapFile).
  * - Draws the static elements of the board (Walls, Food) to the screen.
  */
 public class GameBoard {
     private int[][] data;
     private int rows, cols;
+    // Whether the board wraps around its borders (read from map files, the game default otherwise)
+    private boolean cyclic = MyGameInfo.CYCLIC_MODE;
+    // The walls of the board behind wallMoves(), built on first use and kept in step by set()
+    private Map wallMap;
 
     /**
      * Constructor for the GameBoard.
@@ -23,6 +34,84 @@ public class GameBoard {
         parseMap(mapStr);
     }
 
+    /**
+     * Constructor for a GameBoard over an existing grid (deep copy).
+     * * @param grid The cell values, indexed [x][y], already in game constants.
+     */
+    public GameBoard(int[][] grid) {
+        cols = grid.length;
+        rows = grid[0].length;
+        data = new int[cols][];
+        for (int x = 0; x < cols; x++) data[x] = grid[x].clone();
+    }
+
+    /**
+     * Constructor for a GameBoard that takes over a freshly built grid (no copy).
+     * * @param grid   The cell values, indexed [x][y], not shared with anyone else.
+     * @param cyclic Whether the board wraps around its borders.
+     */
+    private GameBoard(int[][] grid, boolean cyclic) {
+        cols = grid.length;
+        rows = grid[0].length;
+        data = grid;
+        this.cyclic = cyclic;
+    }
+
+    /**
+     * Function Load
+     * 1. Map the binary map file into memory and decode it (see MapFile.read).
+     * 2. Build the board from the decoded cells with a single copy (no text parsing),
+     *    keeping the cyclic flag of the file (see isCyclic).
+     * * @param file The binary map file.
+     * @return The loaded board.
+     */
+    public static GameBoard load(Path file) {
+        Map map = MapFile.read(file);
+        return new GameBoard(map.getMap(), map.isCyclic());
+    }
+
+    /**
+     * Function Save
+     * Writes the board (game constants) and its cyclic flag (see isCyclic) to a binary map file
+     * (see MapFile.write), so a saved board loads back as it was.
+     * * @param file The target file.
+     */
+    public void save(Path file) {
+        Map map = new Map(data);
+        map.setCyclic(cyclic);
+        MapFile.write(map, file);
+    }
+
+    /**
+     * Function CorridorGraph
+     * Compresses the board into its junction/corridor graph (walls are obstacles),
+     * for searches that run on the graph instead of the grid.
+     * * @param cyclic Whether the board wraps around its borders.
+     * @return The corridor graph of the current walls.
+     */
+    public CorridorGraph corridorGraph(boolean cyclic) {
+        Map map = new Map(data);
+        map.setCyclic(cyclic);
+        return CorridorGraph.of(map, MyGameInfo.WALL);
+    }
+
+    /**
+     * Function ConvertText
+     * Converts a text map (the format of the GameBoard constructor) to a binary map file.
+     * * @param textFile The text map file.
+     * @param out      The binary map file to write.
+     * @param cyclic   The cyclic flag to store with the board.
+     */
+    public static void convertText(Path textFile, Path out, boolean cyclic) {
+        try {
+            GameBoard board = new GameBoard(Files.readString(textFile));
+            board.cyclic = cyclic;
+            board.save(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read text map " + textFile, e);
+        }
+    }
+
     /**
      * Function ParseMap
      * 1. Split the raw map string into lines (rows).
@@ -156,9 +245,27 @@ public class GameBoard {
      * @param val The new integer value to set in that cell.
      */
     public void set(int x, int y, int val) {
+        if (wallMap != null && (val == MyGameInfo.WALL) != (data[x][y] == MyGameInfo.WALL)) {
+            wallMap.setPixel(x, y, val);
+        }
         data[x][y] = val;
     }
 
+    /**
+     * The open directions of every cell with walls as obstacles, wrapping around the borders
+     * only if the board is cyclic (see isCyclic).
+     * Built once (one sweep) and updated by set() only when a wall appears or disappears.
+     *
+     * @return The neighbor table of the board's walls.
+     */
+    public NeighborTable wallMoves() {
+        if (wallMap == null) {
+            wallMap = new Map(data);
+            wallMap.setCyclic(cyclic);
+        }
+        return wallMap.neighborTable(MyGameInfo.WALL);
+    }
+
     /**
      * @return The total number of columns in the grid.
      */
@@ -180,6 +287,14 @@ public class GameBoard {
         return data;
     }
 
+    /**
+     * @return Whether the board wraps around its borders: the flag stored in the map file
+     * for a loaded board, MyGameInfo.CYCLIC_MODE otherwise.
+     */
+    public boolean isCyclic() {
+        return cyclic;
+    }
+
     /**
      * Helper to handle cyclic borders if necessary.
      * Ensures coordinates wrap around screen edges.
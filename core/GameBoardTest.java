@@ -83,4 +83,76 @@ class GameBoardTest {
         // Case D: Vertical Overflow (y)
         assertEquals(0, board.wrap(3, height), "Height overflow should wrap to 0");
     }
-}
\ No newline at end of file
+
+    /**
+     * TEST 4: Binary Map Files
+     * A board saved to a binary map file loads back with the same cells and cyclic flag,
+     * and a text map converts to the same board with the given flag, which a second save keeps.
+     */
+    @Test
+    void testSaveAndLoad() throws java.io.IOException {
+        String mapStr = "1\t1\t1\n1\t4\t5\n1\t1\t1";
+        java.nio.file.Path text = java.nio.file.Files.createTempFile("board", ".txt");
+        java.nio.file.Path bin = java.nio.file.Files.createTempFile("board", ".ex3m");
+        try {
+            GameBoard board = new GameBoard(mapStr);
+            board.save(bin);
+            GameBoard loaded = GameBoard.load(bin);
+            assertArrayEquals(board.getGrid(), loaded.getGrid(), "Loaded board should match");
+            assertEquals(board.isCyclic(), loaded.isCyclic(), "The cyclic flag is read back");
+
+            java.nio.file.Files.writeString(text, mapStr);
+            GameBoard.convertText(text, bin, false);
+            GameBoard converted = GameBoard.load(bin);
+            assertArrayEquals(board.getGrid(), converted.getGrid(), "Converted board should match");
+            assertFalse(converted.isCyclic(), "The cyclic flag is read back");
+            converted.save(bin);
+            assertFalse(GameBoard.load(bin).isCyclic(), "A round trip keeps the flag");
+        } finally {
+            java.nio.file.Files.delete(text);
+            java.nio.file.Files.delete(bin);
+        }
+    }
+
+    /**
+     * TEST 5: Wall Moves
+     * The neighbor table of the walls wraps around the borders of a cyclic board only,
+     * and follows walls added or removed with set().
+     */
+    @Test
+    void testWallMoves() {
+        GameBoard board = new GameBoard("0\t1\t0\n0\t0\t4\n0\t0\t0");
+        int x = 0, y = 0;
+        assertEquals(1, board.get(1, 0), "Cell (1,0) is a wall");
+        int open = board.wallMoves().openDirections(x, y);
+        assertEquals(0, open & (1 << 3), "The wall to the right (x+1) blocks");
+        assertNotEquals(0, open & (1 << 1), "Left (x-1) wraps to an open cell");
+
+        board.set(1, 0, MyGameInfo.EMPTY);
+        assertNotEquals(0, board.wallMoves().openDirections(x, y) & (1 << 3), "A removed wall opens the move");
+        board.set(0, 1, MyGameInfo.WALL);
+        assertEquals(0, board.wallMoves().openDirections(x, y) & (1 << 2), "A new wall blocks the move");
+    }
+
+    /**
+     * TEST 6: Wall Moves On A Non-Cyclic Board
+     * A board loaded with the cyclic flag off does not open the moves across its borders.
+     */
+    @Test
+    void testWallMovesNotCyclic() throws java.io.IOException {
+        java.nio.file.Path text = java.nio.file.Files.createTempFile("board", ".txt");
+        java.nio.file.Path bin = java.nio.file.Files.createTempFile("board", ".ex3m");
+        try {
+            java.nio.file.Files.writeString(text, "0\t1\t0\n0\t0\t4\n0\t0\t0");
+            GameBoard.convertText(text, bin, false);
+            GameBoard board = GameBoard.load(bin);
+            int open = board.wallMoves().openDirections(0, 0);
+            assertEquals(0, open & (1 << 1), "Left (x-1) is the border");
+            assertEquals(0, open & (1 << 0), "Down (y-1) is the border");
+            assertNotEquals(0, open & (1 << 2), "Up (y+1) is open");
+        } finally {
+            java.nio.file.Files.delete(text);
+            java.nio.file.Files.delete(bin);
+        }
+    }
+}
@@ -58,27 +58,28 @@ public class Ghosts implements GhostCL {
         List<int[]> allValidMoves = new ArrayList<>();
         List<int[]> preferredMoves = new ArrayList<>();
 
-        // Directions: {Direction_Code, DX, DY}
+        // Directions: {Direction_Code, DX, DY, Table_Direction} (see NeighborTable)
         int[][] candidates = {
-                {Game.RIGHT, 1, 0},
-                {Game.LEFT, -1, 0},
-                {Game.UP, 0, 1},
-                {Game.DOWN, 0, -1}
+                {Game.RIGHT, 1, 0, 3},
+                {Game.LEFT, -1, 0, 1},
+                {Game.UP, 0, 1, 2},
+                {Game.DOWN, 0, -1, 0}
         };
+        // Walls are looked up in the board's neighbor table: one bit per direction
+        int open = board.wallMoves().openDirections(x, y);
 
         for (int[] cand : candidates) {
+            if ((open & (1 << cand[3])) == 0) continue; // Wall
             int dirCode = cand[0];
-            int dx = cand[1];
-            int dy = cand[2];
 
             // Calculate next position (Cyclic safe)
-            int tx = (x + dx + board.getWidth()) % board.getWidth();
-            int ty = (y + dy + board.getHeight()) % board.getHeight();
+            int tx = board.wrap(x + cand[1], board.getWidth());
+            int ty = board.wrap(y + cand[2], board.getHeight());
 
             int targetContent = board.get(tx, ty);
 
-            // Check if valid (Not Wall, Not another Ghost)
-            if (targetContent != MyGameInfo.WALL && targetContent != MyGameInfo.GHOST) {
+            // Check if valid (Not another Ghost)
+            if (targetContent != MyGameInfo.GHOST) {
                 int[] move = {dirCode, tx, ty};
                 allValidMoves.add(move);
 
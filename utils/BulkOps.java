@@ -0,0 +1,52 @@
+package assignments.Ex3.utils;
+
+/**
+ * Whole-array kernels over the flat cell storage of {@link Map}.
+ * Every loop is a plain counted loop without branches on the cell values (the comparisons
+ * become 0/1 arithmetic), which is the shape the JIT compiles to SIMD instructions.
+ * Fill and copy are left to Arrays.fill and System.arraycopy, which are already vectorized
+ * intrinsics.
+ */
+final class BulkOps {
+    private BulkOps() {}
+
+    /**
+     * @return the number of entries of a[from..to) equal to v
+     */
+    static int count(int[] a, int from, int to, int v) {
+        int ans = 0;
+        for (int i = from; i < to; i++) ans += isZero(a[i] ^ v);
+        return ans;
+    }
+
+    /**
+     * Replaces every oldV in a[from..to) with newV.
+     *
+     * @return the number of replaced entries
+     */
+    static int replace(int[] a, int from, int to, int oldV, int newV) {
+        int ans = 0, delta = newV - oldV;
+        for (int i = from; i < to; i++) {
+            int hit = isZero(a[i] ^ oldV);
+            a[i] += hit * delta;
+            ans += hit;
+        }
+        return ans;
+    }
+
+    /**
+     * Packs one mask word: bit j is set iff a[from+j] == v.
+     *
+     * @param count number of entries, at most 64
+     */
+    static long equalBits(int[] a, int from, int count, int v) {
+        long word = 0;
+        for (int j = 0; j < count; j++) word |= (long) isZero(a[from + j] ^ v) << j;
+        return word;
+    }
+
+    /** @return 1 if d == 0, 0 otherwise. */
+    private static int isZero(int d) {
+        return 1 - ((d | -d) >>> 31);
+    }
+}
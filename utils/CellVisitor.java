@@ -0,0 +1,26 @@
+package assignments.Ex3.utils;
+
+/**
+ * The callback of a BFS traversal (see {@link Map#traverse(Pixel2D[], java.util.function.IntPredicate, CellVisitor)}):
+ * called once per reached cell, in BFS order, with primitive arguments only.
+ * The returned int steers the traversal:
+ * {@link #CONTINUE} expands the cell, {@link #PRUNE} keeps it visited but does not expand it,
+ * and {@link #STOP} ends the traversal at once.
+ */
+@FunctionalInterface
+public interface CellVisitor {
+    /** Expand the cell: its walkable neighbors will be visited. */
+    int CONTINUE = 0;
+    /** Do not expand the cell (its neighbors may still be reached through other cells). */
+    int PRUNE = 1;
+    /** End the traversal. */
+    int STOP = 2;
+
+    /**
+     * @param x x coordinate of the reached cell
+     * @param y y coordinate of the reached cell
+     * @param depth its BFS distance from the nearest start cell
+     * @return CONTINUE, PRUNE or STOP
+     */
+    int onVisit(int x, int y, int depth);
+}
@@ -0,0 +1,185 @@
+package assignments.Ex3.utils;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A path on a {@link Map} stored as its start cell plus one byte per step, instead of one
+ * {@link Pixel2D} per cell (a 1000-step path takes about 1 KB).
+ * Each step is a direction in the neighbor order of the map's searches:
+ * 0 = (y-1), 1 = (x-1), 2 = (y+1), 3 = (x+1). Steps across the border of a cyclic map wrap around.
+ *
+ * The first move is {@link #firstStep()} / {@link #nextCell()}, O(1) and without building the
+ * path. The cells themselves are created lazily by {@link #iterator()}, {@link #get(int)} or
+ * {@link #toArray()}.
+ * See {@link Map#compactPath(Pixel2D, Pixel2D, int)}.
+ */
+public final class CompactPath implements Iterable<Pixel2D> {
+    private final int _w, _h;
+    private final int _startX, _startY, _endX, _endY;
+    private final byte[] _steps;
+
+    /**
+     * @param w map width (for wrapping)
+     * @param h map height (for wrapping)
+     * @param startX x of the first cell
+     * @param startY y of the first cell
+     * @param steps the directions (0..3), kept (not copied)
+     */
+    CompactPath(int w, int h, int startX, int startY, byte[] steps) {
+        _w = w;
+        _h = h;
+        _startX = startX;
+        _startY = startY;
+        _steps = steps;
+        int x = startX, y = startY;
+        for (byte d : steps) {
+            x = wrap(x + Map.DX[d], w);
+            y = wrap(y + Map.DY[d], h);
+        }
+        _endX = x;
+        _endY = y;
+    }
+
+    /**
+     * Encodes a path of consecutive 4-neighbor cells.
+     *
+     * @param path the cells (at least one)
+     * @param w map width
+     * @param h map height
+     * @return the compact path
+     * @throws RuntimeException if two consecutive cells are not neighbors
+     */
+    static CompactPath of(Pixel2D[] path, int w, int h) {
+        byte[] steps = new byte[path.length - 1];
+        for (int k = 1; k < path.length; k++) {
+            int dx = path[k].getX() - path[k - 1].getX(), dy = path[k].getY() - path[k - 1].getY();
+            int d;
+            if (dx == 0 && (dy == -1 || dy == h - 1)) d = 0;
+            else if (dy == 0 && (dx == -1 || dx == w - 1)) d = 1;
+            else if (dx == 0 && (dy == 1 || dy == 1 - h)) d = 2;
+            else if (dy == 0 && (dx == 1 || dx == 1 - w)) d = 3;
+            else throw new RuntimeException("Not a path: " + path[k - 1] + " -> " + path[k]);
+            steps[k - 1] = (byte) d;
+        }
+        return new CompactPath(w, h, path[0].getX(), path[0].getY(), steps);
+    }
+
+    /**
+     * @return the number of cells, start and end included (the length of the Pixel2D[] path)
+     */
+    public int length() {
+        return _steps.length + 1;
+    }
+
+    /**
+     * @return the number of moves (length() - 1)
+     */
+    public int getStepCount() {
+        return _steps.length;
+    }
+
+    /**
+     * @param k step number, 0..getStepCount()-1
+     * @return the direction (0..3) of the move from cell k to cell k+1
+     */
+    public int getStep(int k) {
+        return _steps[k];
+    }
+
+    /**
+     * @return the direction (0..3) of the first move, or -1 if the path is a single cell
+     */
+    public int firstStep() {
+        return (_steps.length == 0) ? -1 : _steps[0];
+    }
+
+    /**
+     * @return the first cell
+     */
+    public Pixel2D getStart() {
+        return new Index2D(_startX, _startY);
+    }
+
+    /**
+     * @return the cell after the start (the first move), or the start if the path is a single cell
+     */
+    public Pixel2D nextCell() {
+        if (_steps.length == 0) return getStart();
+        int d = _steps[0];
+        return new Index2D(wrap(_startX + Map.DX[d], _w), wrap(_startY + Map.DY[d], _h));
+    }
+
+    /**
+     * @return the last cell
+     */
+    public Pixel2D getEnd() {
+        return new Index2D(_endX, _endY);
+    }
+
+    /**
+     * @param k cell number, 0..length()-1
+     * @return the k-th cell (walks the first k steps)
+     * @throws RuntimeException if k is out of range
+     */
+    public Pixel2D get(int k) {
+        if (k < 0 || k > _steps.length) throw new RuntimeException("Cell " + k + " is out of the path");
+        int x = _startX, y = _startY;
+        for (int j = 0; j < k; j++) {
+            x = wrap(x + Map.DX[_steps[j]], _w);
+            y = wrap(y + Map.DY[_steps[j]], _h);
+        }
+        return new Index2D(x, y);
+    }
+
+    /**
+     * @return the cells from start to end, creating one pixel per call to next()
+     */
+    @Override
+    public Iterator<Pixel2D> iterator() {
+        return new Iterator<>() {
+            private int _k = 0, _x = _startX, _y = _startY;
+
+            @Override
+            public boolean hasNext() {
+                return _k <= _steps.length;
+            }
+
+            @Override
+            public Pixel2D next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Pixel2D ans = new Index2D(_x, _y);
+                if (_k < _steps.length) {
+                    _x = wrap(_x + Map.DX[_steps[_k]], _w);
+                    _y = wrap(_y + Map.DY[_steps[_k]], _h);
+                }
+                _k++;
+                return ans;
+            }
+        };
+    }
+
+    /**
+     * @return the cells as the path array returned by {@link Map#shortestPath}
+     */
+    public Pixel2D[] toArray() {
+        Pixel2D[] ans = new Pixel2D[length()];
+        int k = 0;
+        for (Pixel2D p : this) ans[k++] = p;
+        return ans;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(_startX).append(',').append(_startY).append(" [");
+        for (byte d : _steps) sb.append(d);
+        return sb.append(']').toString();
+    }
+
+    /** Brings a coordinate that moved at most one cell out of [0, size) back in. */
+    private static int wrap(int v, int size) {
+        if (v < 0) return v + size;
+        return (v >= size) ? v - size : v;
+    }
+}
@@ -0,0 +1,262 @@
+package assignments.Ex3.utils;
+
+import java.util.Arrays;
+
+/**
+ * Connected components of the walkable cells of a {@link Map} (4-neighbors, cyclic if the map is),
+ * for O(1) reachability checks instead of a BFS that only returns null at the end.
+ *
+ * The components are kept in a union-find forest over the cells (union by size, path halving),
+ * built with one sweep that joins every cell with its right and lower neighbors, wrapping around
+ * the borders of a cyclic map. Every root also holds the size of its component and, for each of
+ * the counted values given at creation (e.g. coins and apples), the number of cells holding it -
+ * so "is any food reachable" and "how big is my region" are lookups too.
+ *
+ * The index belongs to its map (see {@link Map#components(int, int...)}) and follows its changes:
+ * 1. A value change on a walkable cell (a coin eaten) only moves a count.
+ * 2. An opened cell joins the components of its walkable neighbors.
+ * 3. A blocked cell may split its component, which a union-find cannot undo, so the index is
+ *    marked stale and rebuilt (one sweep) by the next query. So are fill, init and setCyclic.
+ * Labels are the flat index of the component root, and are valid until the next change.
+ */
+public final class ComponentIndex {
+    private final Map _map;
+    private final int _obs;
+    private final int[] _counted;
+    /** parent[i] is the union-find parent of cell i (itself for roots), -1 for obstacles. */
+    private int[] _parent = new int[0];
+    /** Per root: the number of cells of its component. */
+    private int[] _size = new int[0];
+    /** Per root: the number of cells holding each counted value (root * counted.length + j). */
+    private int[] _counts = new int[0];
+    private int _components = 0;
+    private boolean _stale = true;
+
+    /**
+     * @param map the map (read again whenever the index is stale)
+     * @param obsColor obstacle value
+     * @param counted the values to count per component (each once, none equal to obsColor)
+     */
+    ComponentIndex(Map map, int obsColor, int[] counted) {
+        _map = map;
+        _obs = obsColor;
+        _counted = counted.clone();
+        for (int j = 0; j < counted.length; j++) {
+            if (counted[j] == obsColor) throw new RuntimeException("Cannot count the obstacle value " + obsColor);
+            for (int m = 0; m < j; m++) {
+                if (counted[m] == counted[j]) throw new RuntimeException("Value counted twice: " + counted[j]);
+            }
+        }
+    }
+
+    /**
+     * @param a pixel
+     * @param b pixel
+     * @return true iff both pixels are walkable and connected (false if one is outside the map)
+     */
+    public boolean connected(Pixel2D a, Pixel2D b) {
+        int la = label(a);
+        return la >= 0 && la == label(b);
+    }
+
+    /**
+     * @param p pixel
+     * @return the label of p's component (the flat index of its root), or -1 if p is null,
+     * outside the map or an obstacle
+     */
+    public int label(Pixel2D p) {
+        if (p == null) return -1;
+        return label(p.getX(), p.getY());
+    }
+
+    /**
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return same as {@link #label(Pixel2D)}
+     */
+    public int label(int x, int y) {
+        refresh();
+        if (x < 0 || x >= _map.getWidth() || y < 0 || y >= _map.getHeight()) return -1;
+        int i = _map.index(x, y);
+        return (_parent[i] < 0) ? -1 : find(i);
+    }
+
+    /**
+     * @param p pixel
+     * @return the number of cells of p's component, 0 if p is not a walkable cell
+     */
+    public int componentSize(Pixel2D p) {
+        int r = label(p);
+        return (r < 0) ? 0 : _size[r];
+    }
+
+    /**
+     * @param p pixel
+     * @param value one of the counted values of this index
+     * @return the number of cells holding value in p's component, 0 if p is not a walkable cell
+     * @throws RuntimeException if value is not counted by this index
+     */
+    public int count(Pixel2D p, int value) {
+        int j = countedIndex(value);
+        if (j < 0) throw new RuntimeException("Value " + value + " is not counted by this index");
+        int r = label(p);
+        return (r < 0) ? 0 : _counts[r * _counted.length + j];
+    }
+
+    /**
+     * @return the number of components
+     */
+    public int componentCount() {
+        refresh();
+        return _components;
+    }
+
+    /**
+     * @return a new map where every cell holds its component number (0..componentCount()-1, in
+     * flat index order of the first cell) and obstacles hold -1
+     */
+    public Map2D toMap() {
+        refresh();
+        int n = _parent.length;
+        Map ans = new Map(_map.getWidth(), _map.getHeight(), -1);
+        ans.setCyclic(_map.isCyclic());
+        int[] number = new int[n];
+        Arrays.fill(number, -1);
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            if (_parent[i] < 0) continue;
+            int r = find(i);
+            if (number[r] < 0) number[r] = next++;
+            ans.setCell(i, number[r]);
+        }
+        return ans;
+    }
+
+    /**
+     * @return the obstacle value of this index
+     */
+    public int getObstacleColor() {
+        return _obs;
+    }
+
+    // ----------------- package-private hooks (called by Map) -----------------
+
+    /** @return true iff this index has the given obstacle value and counted values. */
+    boolean matches(int obsColor, int[] counted) {
+        return _obs == obsColor && Arrays.equals(_counted, counted);
+    }
+
+    /** Drops the components; the next query rebuilds them. */
+    void invalidate() {
+        _stale = true;
+    }
+
+    /**
+     * Updates the index after cell i changed from old to v.
+     *
+     * @param i flat index
+     * @param old the previous value
+     * @param v the new value
+     */
+    void cellChanged(int i, int old, int v) {
+        if (_stale || old == v) return;
+        boolean wasOpen = old != _obs, open = v != _obs;
+        if (wasOpen && !open) { // May split a component.
+            _stale = true;
+            return;
+        }
+        if (wasOpen) {
+            int r = find(i);
+            addCount(r, old, -1);
+            addCount(r, v, 1);
+            return;
+        }
+        // Opened: a new singleton, joined with the walkable neighbors.
+        _parent[i] = i;
+        _size[i] = 1;
+        Arrays.fill(_counts, i * _counted.length, (i + 1) * _counted.length, 0);
+        addCount(i, v, 1);
+        _components++;
+        int h = _map.getHeight();
+        int x = i / h, y = i - x * h;
+        for (int d = 0; d < 4; d++) {
+            int nb = _map.neighbor(i, x, y, d);
+            if (nb >= 0 && _parent[nb] >= 0) union(i, nb);
+        }
+    }
+
+    // ----------------- private helpers -----------------
+
+    /** Rebuilds the forest if the index is stale. */
+    private void refresh() {
+        if (!_stale) return;
+        int w = _map.getWidth(), h = _map.getHeight(), n = w * h, k = _counted.length;
+        if (_parent.length != n) {
+            _parent = new int[n];
+            _size = new int[n];
+            _counts = new int[n * k];
+        } else {
+            Arrays.fill(_counts, 0);
+        }
+        _components = 0;
+        for (int i = 0; i < n; i++) {
+            int v = _map.cell(i);
+            if (v == _obs) {
+                _parent[i] = -1;
+                continue;
+            }
+            _parent[i] = i;
+            _size[i] = 1;
+            addCount(i, v, 1);
+            _components++;
+        }
+        boolean cyclic = _map.isCyclic();
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                int i = x * h + y;
+                if (_parent[i] < 0) continue;
+                // Lower neighbor (y+1) and right neighbor (x+1), wrapping if cyclic.
+                int down = (y + 1 < h) ? i + 1 : (cyclic && h > 1) ? x * h : -1;
+                int right = (x + 1 < w) ? i + h : (cyclic && w > 1) ? y : -1;
+                if (down >= 0 && _parent[down] >= 0) union(i, down);
+                if (right >= 0 && _parent[right] >= 0) union(i, right);
+            }
+        }
+        _stale = false;
+    }
+
+    private int find(int i) {
+        while (_parent[i] != i) {
+            _parent[i] = _parent[_parent[i]];
+            i = _parent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a), rb = find(b);
+        if (ra == rb) return;
+        if (_size[ra] < _size[rb]) {
+            int t = ra;
+            ra = rb;
+            rb = t;
+        }
+        _parent[rb] = ra;
+        _size[ra] += _size[rb];
+        int k = _counted.length;
+        for (int j = 0; j < k; j++) _counts[ra * k + j] += _counts[rb * k + j];
+        _components--;
+    }
+
+    private void addCount(int root, int value, int delta) {
+        int j = countedIndex(value);
+        if (j >= 0) _counts[root * _counted.length + j] += delta;
+    }
+
+    private int countedIndex(int value) {
+        for (int j = 0; j < _counted.length; j++) {
+            if (_counted[j] == value) return j;
+        }
+        return -1;
+    }
+}
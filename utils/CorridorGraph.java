@@ -0,0 +1,478 @@
+package assignments.Ex3.utils;
+
+import java.util.Arrays;
+
+/**
+ * The maze of a map compressed into a weighted graph: the nodes are the walkable cells that are
+ * not corridor cells (junctions with 3-4 open neighbors, dead ends and isolated cells), and every
+ * corridor - a chain of cells with exactly two open neighbors - is one edge whose weight is its
+ * length in steps. A loop of corridor cells with no junction gets one of its cells as a node.
+ * Neighbors follow the map (4-neighbors, cyclic if the map is).
+ *
+ * Every walkable cell maps back to the graph: a node cell to its node, a corridor cell to its
+ * edge and its position along it (0 at the first end, the edge length at the second). A shortest
+ * grid path between two cells leaves a corridor only at its ends, so Dijkstra over the nodes,
+ * plus the two partial corridors at the ends, gives exactly the grid BFS distances
+ * ({@link #distance}, {@link #allDistance}) and paths ({@link #shortestPath}).
+ *
+ * On Pacman boards most cells are corridor cells, so the graph has several times fewer nodes
+ * than the grid has cells. The graph is a snapshot of the walls when it was built.
+ */
+public final class CorridorGraph {
+    private static final int INF = Integer.MAX_VALUE;
+    /** The result of {@link #search} when the target is unreachable. */
+    private static final long NONE = Long.MAX_VALUE;
+    /** Node parents that mark the nodes reached straight from the source (see {@link #search}). */
+    private static final int FROM_START_A = -1, FROM_START_B = -2, AT_START = -3;
+
+    private final int _w, _h;
+    private final boolean _cyclic;
+    private final int _cells;
+    /** Node id of each cell, -1 if the cell is an obstacle or a corridor cell. */
+    private final int[] _nodeOf;
+    /** Edge id and position of each corridor cell (undefined for the other cells). */
+    private final int[] _edgeOf, _posOf;
+    /** The cell of each node. */
+    private final int[] _nodeCell;
+    /** Per edge: the two end nodes, the length, and the offset of its interior cells in _edgeCells. */
+    private final int[] _edgeA, _edgeB, _edgeLen, _edgeStart;
+    /** The interior cells of all edges, each edge from its A end to its B end. */
+    private final int[] _edgeCells;
+    /** Adjacency (CSR): the edges of node u are _adjEdge[_adjStart[u] .. _adjStart[u+1]). */
+    private final int[] _adjStart, _adjEdge;
+
+    private CorridorGraph(Map m, int obsColor) {
+        _w = m.getWidth();
+        _h = m.getHeight();
+        _cyclic = m.isCyclic();
+        int n = _w * _h;
+        _nodeOf = new int[n];
+        _edgeOf = new int[n];
+        _posOf = new int[n];
+        Arrays.fill(_nodeOf, -1);
+        Arrays.fill(_edgeOf, -1);
+
+        // 1. Neighbor sets (distinct open cells other than the cell itself) and nodes.
+        int[] nbs = new int[4 * n];
+        int[] deg = new int[n];
+        int[] nodeCell = new int[16];
+        int nodes = 0, cells = 0;
+        for (int i = 0; i < n; i++) {
+            if (m.cell(i) == obsColor) continue;
+            cells++;
+            int x = i / _h, y = i - x * _h;
+            for (int d = 0; d < 4; d++) {
+                int nb = m.neighbor(i, x, y, d);
+                if (nb < 0 || nb == i || m.cell(nb) == obsColor) continue;
+                boolean seen = false;
+                for (int j = 0; j < deg[i]; j++) seen |= nbs[4 * i + j] == nb;
+                if (!seen) nbs[4 * i + deg[i]++] = nb;
+            }
+            if (deg[i] != 2) {
+                if (nodes == nodeCell.length) nodeCell = Arrays.copyOf(nodeCell, nodes * 2);
+                _nodeOf[i] = nodes;
+                nodeCell[nodes++] = i;
+            }
+        }
+        _cells = cells;
+
+        // 2. Walk every corridor from its first end; loops without a node get a node first.
+        EdgeList edges = new EdgeList();
+        for (int u = 0; u < nodes; u++) walkFrom(nodeCell[u], nbs, deg, edges);
+        for (int i = 0; i < n; i++) {
+            if (deg[i] != 2 || _nodeOf[i] >= 0 || _edgeOf[i] >= 0) continue;
+            if (nodes == nodeCell.length) nodeCell = Arrays.copyOf(nodeCell, nodes * 2);
+            _nodeOf[i] = nodes;
+            nodeCell[nodes++] = i;
+            walkFrom(i, nbs, deg, edges);
+        }
+        _nodeCell = Arrays.copyOf(nodeCell, nodes);
+        int e = edges.count;
+        _edgeA = Arrays.copyOf(edges.a, e);
+        _edgeB = Arrays.copyOf(edges.b, e);
+        _edgeLen = Arrays.copyOf(edges.len, e);
+        _edgeStart = Arrays.copyOf(edges.start, e);
+        _edgeCells = Arrays.copyOf(edges.cells, edges.cellCount);
+
+        // 3. Adjacency, without self-loops (they never shorten a path between nodes).
+        _adjStart = new int[nodes + 1];
+        for (int j = 0; j < e; j++) {
+            if (_edgeA[j] == _edgeB[j]) continue;
+            _adjStart[_edgeA[j] + 1]++;
+            _adjStart[_edgeB[j] + 1]++;
+        }
+        for (int u = 0; u < nodes; u++) _adjStart[u + 1] += _adjStart[u];
+        _adjEdge = new int[_adjStart[nodes]];
+        int[] fill = Arrays.copyOf(_adjStart, nodes);
+        for (int j = 0; j < e; j++) {
+            if (_edgeA[j] == _edgeB[j]) continue;
+            _adjEdge[fill[_edgeA[j]]++] = j;
+            _adjEdge[fill[_edgeB[j]]++] = j;
+        }
+    }
+
+    /**
+     * Builds the corridor graph of a map.
+     *
+     * @param map the map (a {@link Map}, or any Map2D - it is copied first)
+     * @param obsColor obstacle value
+     * @return the graph of the walkable cells of map, with its cyclic flag
+     * @throws RuntimeException if map is null
+     */
+    public static CorridorGraph of(Map2D map, int obsColor) {
+        if (map == null) throw new RuntimeException("Map is null");
+        Map m;
+        if (map instanceof Map) {
+            m = (Map) map;
+        } else {
+            m = new Map(map.getMap());
+            m.setCyclic(map.isCyclic());
+        }
+        return new CorridorGraph(m, obsColor);
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return _nodeCell.length;
+    }
+
+    /**
+     * @return the number of edges (corridors, and direct links between adjacent nodes)
+     */
+    public int getEdgeCount() {
+        return _edgeLen.length;
+    }
+
+    /**
+     * @return the number of walkable cells of the map
+     */
+    public int getCellCount() {
+        return _cells;
+    }
+
+    /**
+     * @param node a node id (0..getNodeCount()-1)
+     * @return the cell of the node
+     */
+    public Pixel2D getNode(int node) {
+        return pixel(_nodeCell[node]);
+    }
+
+    /**
+     * @param p pixel
+     * @return the node id of p, or -1 if p is not a node (a corridor cell, an obstacle or outside)
+     */
+    public int nodeAt(Pixel2D p) {
+        int i = cellOf(p);
+        return (i < 0) ? -1 : _nodeOf[i];
+    }
+
+    /**
+     * @param a start pixel
+     * @param b target pixel
+     * @return the grid distance from a to b, or -1 if unreachable (or a pixel is not walkable)
+     * @throws RuntimeException if a pixel is null
+     */
+    public int distance(Pixel2D a, Pixel2D b) {
+        int s = requireWalkable(a), t = requireWalkable(b);
+        if (s < 0 || t < 0) return -1;
+        if (s == t) return 0;
+        SearchWorkspace ws = SearchWorkspace.acquire(_nodeCell.length);
+        try {
+            long best = search(ws, s, t);
+            return (best == NONE) ? -1 : (int) (best >>> 2);
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Finds a shortest grid path, with Dijkstra over the nodes.
+     *
+     * @param a start pixel
+     * @param b target pixel
+     * @return a shortest path including a and b, or null if unreachable (or a pixel is not walkable)
+     * @throws RuntimeException if a pixel is null
+     */
+    public Pixel2D[] shortestPath(Pixel2D a, Pixel2D b) {
+        int s = requireWalkable(a), t = requireWalkable(b);
+        if (s < 0 || t < 0) return null;
+        if (s == t) return new Pixel2D[]{ pixel(s) };
+        SearchWorkspace ws = SearchWorkspace.acquire(_nodeCell.length);
+        try {
+            long best = search(ws, s, t);
+            if (best == NONE) return null;
+            int len = (int) (best >>> 2), way = (int) (best & 3);
+            Pixel2D[] path = new Pixel2D[len + 1];
+            int at = len;
+            path[at] = pixel(t);
+            int te = _edgeOf[t], tp = _posOf[t];
+            if (way == 2) { // Straight along the shared corridor.
+                int sp = _posOf[s], step = (sp < tp) ? -1 : 1;
+                for (int p = tp + step; p != sp; p += step) path[--at] = pixel(cellAt(te, p));
+                path[0] = pixel(s);
+                return path;
+            }
+            int node;
+            if (_nodeOf[t] >= 0) {
+                node = _nodeOf[t];
+            } else if (way == 0) { // Enters t's corridor at its A end.
+                for (int p = tp - 1; p > 0; p--) path[--at] = pixel(cellAt(te, p));
+                node = _edgeA[te];
+                path[--at] = pixel(_nodeCell[node]);
+            } else {
+                for (int p = tp + 1; p < _edgeLen[te]; p++) path[--at] = pixel(cellAt(te, p));
+                node = _edgeB[te];
+                path[--at] = pixel(_nodeCell[node]);
+            }
+            int[] parent = ws.parent, via = ws.aux();
+            while (parent[node] >= 0) {
+                int e = via[node], prev = parent[node];
+                if (_edgeA[e] == node) {
+                    for (int p = 1; p < _edgeLen[e]; p++) path[--at] = pixel(cellAt(e, p));
+                } else {
+                    for (int p = _edgeLen[e] - 1; p > 0; p--) path[--at] = pixel(cellAt(e, p));
+                }
+                node = prev;
+                path[--at] = pixel(_nodeCell[node]);
+            }
+            if (parent[node] != AT_START) { // Leave s's corridor through the reached end.
+                int se = _edgeOf[s], sp = _posOf[s];
+                if (parent[node] == FROM_START_A) {
+                    for (int p = 1; p < sp; p++) path[--at] = pixel(cellAt(se, p));
+                } else {
+                    for (int p = _edgeLen[se] - 1; p > sp; p--) path[--at] = pixel(cellAt(se, p));
+                }
+                path[--at] = pixel(s);
+            }
+            return path;
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Computes the distance from every cell to its nearest source, like
+     * {@link Map#allDistance(Pixel2D[], int)}, with a multi-source Dijkstra over the nodes.
+     * Sources outside the map or on an obstacle are ignored.
+     *
+     * @param sources the source pixels
+     * @return a map where each cell holds the distance to its nearest source, or -1 if no source reaches it
+     * @throws RuntimeException if sources is null
+     */
+    public Map2D allDistance(Pixel2D... sources) {
+        if (sources == null) throw new RuntimeException("Sources array is null");
+        int nodes = _nodeCell.length, edges = _edgeLen.length;
+        boolean[] sourceCell = new boolean[_w * _h];
+        boolean[] sourceEdge = new boolean[edges];
+        Map ans = new Map(_w, _h, -1);
+        ans.setCyclic(_cyclic);
+
+        SearchWorkspace ws = SearchWorkspace.acquire(nodes);
+        try {
+            int[] dist = ws.dist();
+            int size = 0;
+            for (Pixel2D p : sources) {
+                int s = cellOf(p);
+                if (s < 0 || sourceCell[s]) continue;
+                sourceCell[s] = true;
+                if (_nodeOf[s] >= 0) {
+                    size = offer(ws, size, _nodeOf[s], 0, AT_START, -1);
+                } else {
+                    int e = _edgeOf[s];
+                    sourceEdge[e] = true;
+                    size = offer(ws, size, _edgeA[e], _posOf[s], FROM_START_A, -1);
+                    size = offer(ws, size, _edgeB[e], _edgeLen[e] - _posOf[s], FROM_START_B, -1);
+                }
+            }
+            dijkstra(ws, size);
+
+            for (int u = 0; u < nodes; u++) {
+                if (ws.isMarked(u)) ans.setCell(_nodeCell[u], dist[u]);
+            }
+            // Every corridor: the best of its two ends and of the sources on it, in two sweeps.
+            int[] line = new int[maxEdgeLength() + 1];
+            for (int e = 0; e < edges; e++) {
+                int len = _edgeLen[e];
+                if (len < 2) continue;
+                int a = _edgeA[e], b = _edgeB[e];
+                int run = ws.isMarked(a) ? dist[a] : INF;
+                for (int p = 1; p < len; p++) {
+                    if (run != INF) run++;
+                    if (sourceEdge[e] && sourceCell[cellAt(e, p)]) run = 0;
+                    line[p] = run;
+                }
+                run = ws.isMarked(b) ? dist[b] : INF;
+                for (int p = len - 1; p > 0; p--) {
+                    if (run != INF) run++;
+                    if (sourceEdge[e] && sourceCell[cellAt(e, p)]) run = 0;
+                    int d = Math.min(run, line[p]);
+                    if (d != INF) ans.setCell(cellAt(e, p), d);
+                }
+            }
+        } finally {
+            ws.release();
+        }
+        return ans;
+    }
+
+    // ----------------- private helpers -----------------
+
+    /**
+     * Dijkstra from cell s until the best way to cell t is known.
+     *
+     * @return (distance << 2 | way), way being 0 through t's A end, 1 through its B end (or t is a
+     * node), 2 straight along a corridor shared with s; NONE if t is unreachable
+     */
+    private long search(SearchWorkspace ws, int s, int t) {
+        int size = 0;
+        long best = NONE;
+        int se = (_nodeOf[s] >= 0) ? -1 : _edgeOf[s];
+        int te = (_nodeOf[t] >= 0) ? -1 : _edgeOf[t];
+        if (se >= 0 && se == te) best = ((long) Math.abs(_posOf[s] - _posOf[t]) << 2) | 2;
+        if (se < 0) {
+            size = offer(ws, size, _nodeOf[s], 0, AT_START, -1);
+        } else {
+            size = offer(ws, size, _edgeA[se], _posOf[s], FROM_START_A, -1);
+            size = offer(ws, size, _edgeB[se], _edgeLen[se] - _posOf[s], FROM_START_B, -1);
+        }
+        int[] dist = ws.dist();
+        while (size > 0) {
+            long top = ws.heap[0];
+            int d = (int) (top >>> 32);
+            if (d >= (best >>> 2)) break; // No deeper node can improve on best.
+            size = PathSearch.pop(ws.heap, size);
+            int u = (int) top;
+            if (dist[u] != d) continue; // Stale entry.
+            ws.expanded++;
+            if (te < 0) {
+                if (_nodeCell[u] == t) return ((long) d << 2) | 1;
+            } else {
+                if (u == _edgeA[te]) best = Math.min(best, (long) (d + _posOf[t]) << 2);
+                if (u == _edgeB[te]) best = Math.min(best, ((long) (d + _edgeLen[te] - _posOf[t]) << 2) | 1);
+            }
+            size = relaxEdges(ws, size, u, d);
+        }
+        return best;
+    }
+
+    /** Dijkstra over the nodes until the heap is empty. */
+    private void dijkstra(SearchWorkspace ws, int size) {
+        int[] dist = ws.dist();
+        while (size > 0) {
+            long top = ws.heap[0];
+            size = PathSearch.pop(ws.heap, size);
+            int u = (int) top, d = (int) (top >>> 32);
+            if (dist[u] != d) continue; // Stale entry.
+            ws.expanded++;
+            size = relaxEdges(ws, size, u, d);
+        }
+    }
+
+    private int relaxEdges(SearchWorkspace ws, int size, int u, int d) {
+        for (int j = _adjStart[u]; j < _adjStart[u + 1]; j++) {
+            int e = _adjEdge[j];
+            int v = (_edgeA[e] == u) ? _edgeB[e] : _edgeA[e];
+            size = offer(ws, size, v, d + _edgeLen[e], u, e);
+        }
+        return size;
+    }
+
+    /** Offers distance d to node v, reached from parent (a node, or one of the FROM/AT codes) by edge e. */
+    private int offer(SearchWorkspace ws, int size, int v, int d, int parent, int e) {
+        int[] dist = ws.dist();
+        if (ws.isMarked(v) && dist[v] <= d) return size;
+        ws.mark(v);
+        dist[v] = d;
+        ws.parent[v] = parent;
+        ws.aux()[v] = e;
+        return PathSearch.push(ws, size, ((long) d << 32) | v);
+    }
+
+    /**
+     * Walks every corridor that leaves node cell u and has not been walked yet.
+     */
+    private void walkFrom(int u, int[] nbs, int[] deg, EdgeList edges) {
+        for (int j = 0; j < deg[u]; j++) {
+            int first = nbs[4 * u + j];
+            if (_nodeOf[first] >= 0) { // Adjacent nodes: one edge of length 1, added from the lower id.
+                if (_nodeOf[u] < _nodeOf[first]) edges.add(_nodeOf[u], _nodeOf[first], 1);
+                continue;
+            }
+            if (_edgeOf[first] >= 0) continue; // Walked from its other end.
+            int e = edges.count;
+            int prev = u, cur = first, len = 1;
+            while (_nodeOf[cur] < 0) {
+                _edgeOf[cur] = e;
+                _posOf[cur] = len;
+                edges.addCell(cur);
+                int next = nbs[4 * cur];
+                if (next == prev) next = nbs[4 * cur + 1];
+                prev = cur;
+                cur = next;
+                len++;
+            }
+            edges.add(_nodeOf[u], _nodeOf[cur], len);
+        }
+    }
+
+    /** @return the cell at position p (0..length) of edge e. */
+    private int cellAt(int e, int p) {
+        if (p == 0) return _nodeCell[_edgeA[e]];
+        if (p == _edgeLen[e]) return _nodeCell[_edgeB[e]];
+        return _edgeCells[_edgeStart[e] + p - 1];
+    }
+
+    private int maxEdgeLength() {
+        int max = 0;
+        for (int len : _edgeLen) max = Math.max(max, len);
+        return max;
+    }
+
+    private Pixel2D pixel(int i) {
+        int x = i / _h;
+        return new Index2D(x, i - x * _h);
+    }
+
+    /** @return the flat index of p, or -1 if p is outside the map or not walkable. */
+    private int cellOf(Pixel2D p) {
+        if (p == null || p.getX() < 0 || p.getX() >= _w || p.getY() < 0 || p.getY() >= _h) return -1;
+        int i = p.getX() * _h + p.getY();
+        return (_nodeOf[i] >= 0 || _edgeOf[i] >= 0) ? i : -1;
+    }
+
+    /** @return same as {@link #cellOf}, for a pixel that must not be null. */
+    private int requireWalkable(Pixel2D p) {
+        if (p == null) throw new RuntimeException("Pixel2D is null");
+        return cellOf(p);
+    }
+
+    /** Growable edge arrays used while building. */
+    private static final class EdgeList {
+        int[] a = new int[16], b = new int[16], len = new int[16], start = new int[16];
+        int[] cells = new int[64];
+        int count = 0, cellCount = 0;
+
+        /** Appends an interior cell of the edge being walked (before its add). */
+        void addCell(int cell) {
+            if (cellCount == cells.length) cells = Arrays.copyOf(cells, cellCount * 2);
+            cells[cellCount++] = cell;
+        }
+
+        void add(int from, int to, int length) {
+            if (count == a.length) {
+                a = Arrays.copyOf(a, count * 2);
+                b = Arrays.copyOf(b, count * 2);
+                len = Arrays.copyOf(len, count * 2);
+                start = Arrays.copyOf(start, count * 2);
+            }
+            a[count] = from;
+            b[count] = to;
+            len[count] = length;
+            start[count] = cellCount - (length - 1);
+            count++;
+        }
+    }
+}
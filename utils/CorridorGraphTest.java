@@ -0,0 +1,102 @@
+package assignments.Ex3.utils;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit 5 Testing class for CorridorGraph.
+ * Distances and paths are compared with the grid BFS of Map.
+ */
+public class CorridorGraphTest {
+
+    /**
+     * Test 1: Exact distances
+     * On mazes and random boards (both cyclic flags, including 1- and 2-wide boards), the
+     * multi-source distances, the pair distances and the path lengths all match the grid BFS.
+     */
+    @Test
+    void testMatchesGridBfs() {
+        Random rnd = new Random(5);
+        for (int round = 0; round < 60; round++) {
+            int w = 1 + rnd.nextInt(30), h = 1 + rnd.nextInt(30);
+            int[][] board = (round % 3 == 0 && w > 2 && h > 2) ? MapBenchmark.maze(rnd, w, h, 0.1)
+                    : MapBenchmark.randomBoard(rnd, w, h, 0.1 + rnd.nextDouble() * 0.4);
+            Map map = new Map(board);
+            map.setCyclic(round % 2 == 0);
+            CorridorGraph graph = CorridorGraph.of(map, 1);
+
+            Pixel2D[] sources = new Pixel2D[1 + rnd.nextInt(3)];
+            for (int i = 0; i < sources.length; i++) sources[i] = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+            Map2D expected = map.allDistance(sources, 1);
+            Map2D actual = graph.allDistance(sources);
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    assertEquals(expected.getPixel(x, y), actual.getPixel(x, y), "distance at " + x + "," + y);
+                }
+            }
+
+            for (int q = 0; q < 20; q++) {
+                Pixel2D a = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Pixel2D b = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Pixel2D[] bfs = map.shortestPath(a, b, 1);
+                Pixel2D[] path = graph.shortestPath(a, b);
+                if (bfs == null) {
+                    assertNull(path, a + " -> " + b);
+                    assertEquals(-1, graph.distance(a, b));
+                    continue;
+                }
+                assertNotNull(path, a + " -> " + b);
+                assertEquals(bfs.length, path.length, a + " -> " + b);
+                assertEquals(bfs.length - 1, graph.distance(a, b));
+                MapTest.assertValidPath(map, path, a, b, 1);
+            }
+        }
+    }
+
+    /**
+     * Test 2: Compression
+     * A maze has far fewer nodes than walkable cells, and a ring of corridor cells
+     * (no junction at all) becomes one node with a self-loop.
+     */
+    @Test
+    void testCompression() {
+        Map maze = new Map(MapBenchmark.maze(new Random(2), 41, 41, 0.05));
+        CorridorGraph graph = CorridorGraph.of(maze, 1);
+        assertTrue(graph.getNodeCount() * 3 < graph.getCellCount(),
+                graph.getNodeCount() + " nodes for " + graph.getCellCount() + " cells");
+
+        Map ring = new Map(5, 5, 1);
+        ring.setCyclic(false);
+        for (int i = 0; i < 4; i++) {
+            ring.setPixel(1 + i, 1, 0);
+            ring.setPixel(1, 1 + i, 0);
+            ring.setPixel(4, 1 + i, 0);
+            ring.setPixel(1 + i, 4, 0);
+        }
+        CorridorGraph loop = CorridorGraph.of(ring, 1);
+        assertEquals(1, loop.getNodeCount());
+        assertEquals(1, loop.getEdgeCount());
+        assertEquals(12, loop.getCellCount());
+        assertEquals(0, loop.nodeAt(loop.getNode(0)));
+        assertEquals(6, loop.distance(new Index2D(1, 1), new Index2D(4, 4)));
+        assertEquals(5, loop.shortestPath(new Index2D(1, 2), new Index2D(3, 4)).length);
+    }
+
+    /**
+     * Test 3: Argument checks
+     */
+    @Test
+    void testInvalidArguments() {
+        Map map = new Map(4, 4, 0);
+        map.setPixel(2, 2, 1);
+        CorridorGraph graph = CorridorGraph.of(map, 1);
+        assertThrows(RuntimeException.class, () -> CorridorGraph.of(null, 1));
+        assertThrows(RuntimeException.class, () -> graph.distance(null, new Index2D(0, 0)));
+        assertThrows(RuntimeException.class, () -> graph.allDistance((Pixel2D[]) null));
+        assertEquals(-1, graph.distance(new Index2D(2, 2), new Index2D(0, 0)));
+        assertNull(graph.shortestPath(new Index2D(0, 0), new Index2D(4, 0)));
+        assertEquals(-1, graph.nodeAt(new Index2D(2, 2)));
+    }
+}
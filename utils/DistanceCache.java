@@ -0,0 +1,146 @@
+package assignments.Ex3.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded LRU cache of {@link Map#allDistance(Pixel2D, int)} results, for the distance fields
+ * that are asked for again and again while the walls stay put (from a coin cluster, from the
+ * ghost house...).
+ *
+ * Entries are keyed by (source, obstacle value, {@link Map#layerVersion(int) layer version}),
+ * so a field is reused by every later query on the same map - or on a copy or fork of it -
+ * until a cell of that map becomes or stops being an obstacle; coins, Pacman and ghosts moving
+ * over walkable cells do not invalidate anything. Stale entries are never looked up again and
+ * age out of the LRU order.
+ *
+ * The cache is capped in bytes (4 per cell of a field, plus a fixed overhead per entry): the
+ * least recently used fields are evicted first, and a field larger than the whole cap is
+ * returned without being cached. Hit, miss and eviction counters are kept for tuning the cap.
+ * All the methods are thread-safe; a field is computed outside the lock.
+ */
+public final class DistanceCache {
+    /** Bytes counted per entry on top of its cells (key, map header, LRU links). */
+    static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long _maxBytes;
+    private final LinkedHashMap<Key, Map> _fields = new LinkedHashMap<>(16, 0.75f, true);
+    private long _bytes = 0;
+    private long _hits = 0, _misses = 0, _evictions = 0;
+
+    /**
+     * @param maxBytes the memory cap of the cached fields, in bytes
+     * @throws RuntimeException if maxBytes is negative
+     */
+    public DistanceCache(long maxBytes) {
+        if (maxBytes < 0) throw new RuntimeException("Memory cap must not be negative: " + maxBytes);
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Same as {@code map.allDistance(source, obsColor)}, from the cache when the layer of map
+     * has not changed since the field was computed.
+     *
+     * @param map the map
+     * @param source start pixel
+     * @param obsColor obstacle value
+     * @return a map where each cell holds its distance from source, or -1 if unreachable
+     * (a copy-on-write fork of the cached field, so changing it does not touch the cache);
+     * null if source is outside the map
+     * @throws RuntimeException if map or source is null
+     */
+    public Map2D allDistance(Map map, Pixel2D source, int obsColor) {
+        if (map == null) throw new RuntimeException("Map is null");
+        if (source == null) throw new RuntimeException("Pixel2D is null");
+        if (!map.isInside(source)) return null;
+        Key key = new Key(map.layerVersion(obsColor), obsColor, source.getX(), source.getY());
+        synchronized (this) {
+            Map ans = _fields.get(key);
+            if (ans != null) {
+                _hits++;
+                return ans.fork();
+            }
+            _misses++;
+        }
+
+        Map field = (Map) map.allDistance(source, obsColor);
+        long bytes = bytesOf(field);
+        if (bytes > _maxBytes) return field;
+        Map ans = field.fork();
+        synchronized (this) {
+            if (_fields.put(key, field) == null) _bytes += bytes;
+            Iterator<Map> lru = _fields.values().iterator();
+            while (_bytes > _maxBytes) {
+                _bytes -= bytesOf(lru.next());
+                lru.remove();
+                _evictions++;
+            }
+        }
+        return ans;
+    }
+
+    /** Drops all the cached fields (the counters are kept). */
+    public synchronized void clear() {
+        _fields.clear();
+        _bytes = 0;
+    }
+
+    /** @return the number of queries answered from the cache. */
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    /** @return the number of queries that ran a BFS. */
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    /** @return the number of fields evicted to stay under the memory cap. */
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+
+    /** @return the number of cached fields. */
+    public synchronized int size() {
+        return _fields.size();
+    }
+
+    /** @return the bytes taken by the cached fields (as counted against the cap). */
+    public synchronized long getSizeBytes() {
+        return _bytes;
+    }
+
+    /** @return the memory cap, in bytes. */
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
+    private static long bytesOf(Map field) {
+        return 4L * field.getWidth() * field.getHeight() + ENTRY_OVERHEAD_BYTES;
+    }
+
+    /** A cached field: the layer version identifies the map layout (size and cyclic flag included). */
+    private static final class Key {
+        private final long _version;
+        private final int _obs, _x, _y;
+
+        Key(long version, int obs, int x, int y) {
+            _version = version;
+            _obs = obs;
+            _x = x;
+            _y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return _version == k._version && _obs == k._obs && _x == k._x && _y == k._y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_version * 0x9E3779B97F4A7C15L) ^ Long.hashCode(Index2D.pack(_x, _y) * 31 + _obs);
+        }
+    }
+}
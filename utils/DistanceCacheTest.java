@@ -0,0 +1,114 @@
+package assignments.Ex3.utils;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit 5 Testing class for DistanceCache.
+ * Every cached field is compared with a fresh BFS (Map.allDistance).
+ */
+public class DistanceCacheTest {
+
+    /**
+     * Test 1: Layer versions
+     * Only a change of the obstacle layer gives a map a new version; copies and forks keep it.
+     */
+    @Test
+    void testLayerVersion() {
+        Map map = new Map(MapBenchmark.randomBoard(new Random(23), 10, 8, 0.3));
+        map.setPixel(2, 2, 0);
+        long v = map.layerVersion(1);
+        assertTrue(v > 0);
+        assertEquals(v, map.layerVersion(1));
+        map.setPixel(2, 2, 4);
+        assertEquals(v, map.layerVersion(1), "a coin on a walkable cell keeps the layer");
+        Map fork = map.fork(), copy = new Map(map);
+        assertEquals(v, fork.layerVersion(1));
+        assertEquals(v, copy.layerVersion(1));
+
+        map.setPixel(2, 2, 1);
+        long v2 = map.layerVersion(1);
+        assertNotEquals(v, v2);
+        assertEquals(v, fork.layerVersion(1), "the fork did not change");
+        fork.setPixel(2, 2, 1);
+        assertNotEquals(v2, fork.layerVersion(1), "versions are never shared by different changes");
+        map.setCyclic(!map.isCyclic());
+        assertNotEquals(v2, map.layerVersion(1));
+        long v3 = map.layerVersion(1);
+        assertNotEquals(v3, map.layerVersion(2));
+        assertNotEquals(v3, map.layerVersion(1), "switching the obstacle value starts a new version");
+    }
+
+    /**
+     * Test 2: Hits and misses
+     * Repeated queries hit until a wall changes; the results always match a fresh BFS,
+     * and changing a returned field does not touch the cache.
+     */
+    @Test
+    void testHitsAndMisses() {
+        Random rnd = new Random(24);
+        Map map = new Map(MapBenchmark.randomBoard(rnd, 20, 15, 0.3));
+        DistanceCache cache = new DistanceCache(1 << 20);
+        Pixel2D a = new Index2D(3, 4), b = new Index2D(10, 10);
+        map.setPixel(a, 0);
+        for (int round = 0; round < 3; round++) {
+            assertArrayEquals(map.allDistance(a, 1).getMap(), cache.allDistance(map, a, 1).getMap());
+            assertArrayEquals(map.allDistance(b, 1).getMap(), cache.allDistance(map, b, 1).getMap());
+        }
+        assertEquals(2, cache.getMisses());
+        assertEquals(4, cache.getHits());
+        assertEquals(2, cache.size());
+        assertEquals(2 * (4L * 20 * 15 + DistanceCache.ENTRY_OVERHEAD_BYTES), cache.getSizeBytes());
+
+        Map2D field = cache.allDistance(map, a, 1);
+        field.setPixel(0, 0, 99);
+        assertArrayEquals(map.allDistance(a, 1).getMap(), cache.allDistance(map, a, 1).getMap());
+
+        map.setPixel(5, 5, 4); // Walkable either way: no new BFS.
+        map.setPixel(5, 5, 0);
+        cache.allDistance(map, a, 1);
+        assertEquals(2, cache.getMisses());
+        map.setPixel(5, 5, 1);
+        assertArrayEquals(map.allDistance(a, 1).getMap(), cache.allDistance(map, a, 1).getMap());
+        assertEquals(3, cache.getMisses());
+        assertArrayEquals(map.allDistance(a, 1).getMap(), cache.allDistance(map.fork(), a, 1).getMap());
+        assertEquals(3, cache.getMisses(), "a fork shares the layer of its map");
+
+        assertNull(cache.allDistance(map, new Index2D(20, 0), 1));
+        assertThrows(RuntimeException.class, () -> cache.allDistance(null, a, 1));
+        assertThrows(RuntimeException.class, () -> new DistanceCache(-1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    /**
+     * Test 3: Memory cap
+     * The least recently used fields are evicted to stay under the cap,
+     * and a field larger than the cap is not cached at all.
+     */
+    @Test
+    void testEviction() {
+        Map map = new Map(10, 10, 0);
+        long entry = 4L * 10 * 10 + DistanceCache.ENTRY_OVERHEAD_BYTES;
+        DistanceCache cache = new DistanceCache(3 * entry);
+        for (int x = 0; x < 3; x++) cache.allDistance(map, new Index2D(x, 0), 1);
+        cache.allDistance(map, new Index2D(0, 0), 1); // (0,0) is now the most recent.
+        cache.allDistance(map, new Index2D(3, 0), 1); // Evicts (1,0).
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.size());
+        assertTrue(cache.getSizeBytes() <= cache.getMaxBytes());
+        long misses = cache.getMisses();
+        cache.allDistance(map, new Index2D(0, 0), 1);
+        assertEquals(misses, cache.getMisses());
+        cache.allDistance(map, new Index2D(1, 0), 1);
+        assertEquals(misses + 1, cache.getMisses());
+
+        DistanceCache tiny = new DistanceCache(entry - 1);
+        assertArrayEquals(map.allDistance(new Index2D(0, 0), 1).getMap(), tiny.allDistance(map, new Index2D(0, 0), 1).getMap());
+        assertEquals(0, tiny.size());
+        assertEquals(0, tiny.getEvictions());
+    }
+}
@@ -0,0 +1,381 @@
+package assignments.Ex3.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * An all-pairs distance table over the walkable cells of a map, for boards whose walls never move.
+ * For every (cell, target) pair it stores the maze distance (4-neighbors, cyclic if the map is)
+ * and the first step of a shortest path, so {@link #distance} and {@link #nextHop} are O(1)
+ * and no BFS runs at query time.
+ *
+ * Layout: the m walkable cells are numbered 0..m-1 (in flat map order), and the table is
+ * target-major - row t holds the distance (a char, {@link #UNREACHABLE} if none) and the
+ * next-hop direction (a byte, see {@link Map#DX}) from every cell towards target t. Each row is
+ * one BFS from its target, and the rows are built in parallel on all cores.
+ *
+ * Tables are cached by wall layout (size, cyclic flag and the exact set of walkable cells), so
+ * boards that differ only in coins, Pacman or ghosts share one table. {@link #of(Map, int)}
+ * returns the cached table, building it on first use - e.g. call it at game init to prewarm.
+ * The cache holds at most {@link #MAX_CACHE_BYTES} of tables (3 bytes per pair), dropping the
+ * least recently used ones first; the table just returned always stays.
+ *
+ * Tables can also be saved to a binary file and read back through {@link FileChannel#map},
+ * so a restarted JVM (or another process) uses the page cache instead of rebuilding the table
+ * or copying it onto the heap. File format (big-endian):
+ * <pre>
+ *   int  magic "EX3D", int version, int width, int height, int flags (bit 0 = cyclic),
+ *   int  m (walkable cells), long layout hash,
+ *   long walkable mask, width * ceil(height/64) words (see {@link WalkableMask}),
+ *   char distances[m*m], byte next-hop directions[m*m]
+ * </pre>
+ */
+public final class DistanceTable {
+    /** Distance stored for pairs that are not connected. */
+    public static final int UNREACHABLE = Character.MAX_VALUE;
+    /** Largest number of walkable cells supported (the table holds m*m pairs, 3 bytes each: 12 MB at most). */
+    public static final int MAX_CELLS = 1 << 11;
+    /** Memory cap of the cached tables, in bytes (a few full-size tables, many game boards). */
+    public static final long MAX_CACHE_BYTES = 32L << 20;
+    private static final int MAGIC = 0x45583344; // "EX3D"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final LinkedHashMap<Key, DistanceTable> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    /** Bytes of the cached tables (guarded by CACHE). */
+    private static long cachedBytes = 0;
+
+    private final Key _key;
+    private final int _w, _h, _m;
+    /** Flat map index (x*h + y) to cell number, -1 for obstacles. */
+    private final int[] _id;
+    /** Cell number to flat map index. */
+    private final int[] _cell;
+    /** Heap arrays for a built table, views of the mapped file for a loaded one. */
+    private final CharBuffer _dist;
+    private final ByteBuffer _hop;
+
+    /** Builds the table of a map (the layout key must come from the same map). */
+    private DistanceTable(Map map, Key key) {
+        _key = key;
+        _w = key._w;
+        _h = key._h;
+        _id = new int[_w * _h];
+        _m = numberCells(key, _id);
+        _cell = cellsOf(_id, _m);
+        char[] dist = new char[_m * _m];
+        byte[] hop = new byte[_m * _m];
+        IntStream.range(0, _m).parallel().forEach(t -> buildRow(map, t, dist, hop));
+        _dist = CharBuffer.wrap(dist);
+        _hop = ByteBuffer.wrap(hop);
+    }
+
+    /** Wraps a table read from a file. */
+    private DistanceTable(Key key, int m, CharBuffer dist, ByteBuffer hop) {
+        _key = key;
+        _w = key._w;
+        _h = key._h;
+        _id = new int[_w * _h];
+        _m = numberCells(key, _id);
+        if (_m != m) throw new RuntimeException("Corrupt distance table: " + m + " cells in the header, " + _m + " in the mask");
+        _cell = cellsOf(_id, _m);
+        _dist = dist;
+        _hop = hop;
+    }
+
+    /**
+     * Returns the table of the wall layout of {@code map}, from the cache or built now.
+     *
+     * @param map the map
+     * @param obsColor obstacle value
+     * @return the table, or null if the map has more than {@link #MAX_CELLS} walkable cells
+     * @throws RuntimeException if map is null
+     */
+    public static DistanceTable of(Map map, int obsColor) {
+        return of(map, obsColor, null);
+    }
+
+    /**
+     * Same as {@link #of(Map, int)}, with a directory of table files behind the in-memory cache:
+     * a table missing from the cache is mapped from {@code dir} if a valid file of this layout is
+     * there, and otherwise built and saved to it (replacing a stale or corrupt file).
+     *
+     * @param map the map
+     * @param obsColor obstacle value
+     * @param dir the table directory (created if missing), or null for the in-memory cache only
+     * @return the table, or null if the map has more than {@link #MAX_CELLS} walkable cells
+     * @throws RuntimeException if map is null, or the directory cannot be read or written
+     */
+    public static DistanceTable of(Map map, int obsColor, Path dir) {
+        if (map == null) throw new RuntimeException("Map is null");
+        WalkableMask mask = map.walkableMask(obsColor);
+        if (mask.count() > MAX_CELLS) return null;
+        Key key = new Key(mask.getWidth(), mask.getHeight(), mask.isCyclic(), mask.words());
+        synchronized (CACHE) {
+            DistanceTable ans = CACHE.get(key);
+            if (ans != null) return ans;
+        }
+
+        // Built (or mapped) outside the lock; a rare duplicate build is harmless.
+        DistanceTable ans = null;
+        Path file = (dir == null) ? null : dir.resolve(key.fileName());
+        if (file != null && Files.exists(file)) {
+            try {
+                ans = load(file);
+                if (!ans._key.equals(key)) ans = null; // A hash collision - rebuild and overwrite.
+            } catch (RuntimeException e) {
+                ans = null; // Stale (older version), truncated or corrupt - rebuild and overwrite.
+            }
+        }
+        if (ans == null) {
+            ans = new DistanceTable(map, key);
+            if (file != null) ans.save(file);
+        }
+        synchronized (CACHE) {
+            DistanceTable old = CACHE.put(key, ans);
+            if (old != null) cachedBytes -= old.bytes();
+            cachedBytes += ans.bytes();
+            Iterator<DistanceTable> lru = CACHE.values().iterator();
+            while (cachedBytes > MAX_CACHE_BYTES && CACHE.size() > 1) {
+                cachedBytes -= lru.next().bytes();
+                lru.remove();
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * Maps a table file (see the class comment) into memory. The table is read straight from
+     * the mapping - only the cell numbering is rebuilt on the heap.
+     *
+     * @param file the table file
+     * @return the table
+     * @throws RuntimeException if the file cannot be read or is not a valid table file
+     */
+    public static DistanceTable load(Path file) {
+        if (file == null) throw new RuntimeException("Path is null");
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // Stays valid after close.
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read distance table " + file, e);
+        }
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new RuntimeException("Not a distance table file: " + file);
+        }
+        if (buf.getInt(4) != VERSION) throw new RuntimeException("Unsupported distance table version " + buf.getInt(4));
+        int w = buf.getInt(8), h = buf.getInt(12), flags = buf.getInt(16), m = buf.getInt(20);
+        if (w <= 0 || h <= 0 || m < 0 || m > MAX_CELLS) throw new RuntimeException("Corrupt distance table header: " + file);
+        long words = (long) w * ((h + 63) >>> 6);
+        long distAt = HEADER_BYTES + 8 * words, hopAt = distAt + 2L * m * m;
+        if (buf.capacity() != hopAt + (long) m * m) throw new RuntimeException("Truncated distance table: " + file);
+
+        long[] bits = new long[(int) words];
+        buf.slice(HEADER_BYTES, (int) (8 * words)).asLongBuffer().get(bits);
+        Key key = new Key(w, h, (flags & 1) != 0, bits);
+        if (key._hash != buf.getLong(24)) throw new RuntimeException("Corrupt distance table (hash mismatch): " + file);
+        CharBuffer dist = buf.slice((int) distAt, 2 * m * m).asCharBuffer();
+        ByteBuffer hop = buf.slice((int) hopAt, m * m);
+        return new DistanceTable(key, m, dist, hop);
+    }
+
+    /**
+     * Writes this table to a file (see the class comment). The file is written next to its
+     * final name and then moved into place, so readers never see a partial table.
+     *
+     * @param file the target file (replaced if it exists)
+     * @throws RuntimeException if the file cannot be written
+     */
+    public void save(Path file) {
+        if (file == null) throw new RuntimeException("Path is null");
+        int words = _key._bits.length;
+        long size = HEADER_BYTES + 8L * words + 3L * _m * _m;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "dist", ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buf.putInt(MAGIC).putInt(VERSION).putInt(_w).putInt(_h).putInt(_key._cyclic ? 1 : 0)
+                        .putInt(_m).putLong(_key._hash);
+                buf.asLongBuffer().put(_key._bits);
+                buf.position(HEADER_BYTES + 8 * words);
+                buf.asCharBuffer().put(_dist.duplicate().clear());
+                buf.position(HEADER_BYTES + 8 * words + 2 * _m * _m);
+                buf.put(_hop.duplicate().clear());
+                buf.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write distance table " + file, e);
+        }
+    }
+
+    /** @return the number of walkable cells. */
+    public int size() {
+        return _m;
+    }
+
+    /** @return the bytes of the cached tables (at most {@link #MAX_CACHE_BYTES} unless one table is larger). */
+    static long cachedBytes() {
+        synchronized (CACHE) {
+            return cachedBytes;
+        }
+    }
+
+    /** Empties the in-memory cache, so the next of() reads its directory or builds again (for tests). */
+    static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /** @return the 64-bit hash of the wall layout (also used in the file names of {@link #of(Map, int, Path)}). */
+    public long layoutHash() {
+        return _key._hash;
+    }
+
+    /**
+     * @param a a pixel
+     * @param b a pixel
+     * @return the maze distance between a and b, or -1 if they are not connected
+     * (or one of them is an obstacle or outside the map)
+     */
+    public int distance(Pixel2D a, Pixel2D b) {
+        int s = id(a), t = id(b);
+        if (s < 0 || t < 0) return -1;
+        int d = _dist.get(t * _m + s);
+        return (d == UNREACHABLE) ? -1 : d;
+    }
+
+    /**
+     * @param a the current pixel
+     * @param b the target pixel
+     * @return the neighbor of a on a shortest path to b, or null if a == b or b is not reachable from a
+     */
+    public Pixel2D nextHop(Pixel2D a, Pixel2D b) {
+        int s = id(a), t = id(b);
+        if (s < 0 || t < 0 || s == t || _dist.get(t * _m + s) == UNREACHABLE) return null;
+        int d = _hop.get(t * _m + s);
+        int x = a.getX() + Map.DX[d], y = a.getY() + Map.DY[d];
+        if (x < 0) x = _w - 1; else if (x >= _w) x = 0;
+        if (y < 0) y = _h - 1; else if (y >= _h) y = 0;
+        return new Index2D(x, y);
+    }
+
+    // ----------------- private helpers -----------------
+
+    /** @return the bytes of the distances and next hops, as counted against the cache cap. */
+    private long bytes() {
+        return 3L * _m * _m;
+    }
+
+    /** BFS from target t, filling row t (the row doubles as the visited set). */
+    private void buildRow(Map map, int t, char[] dist, byte[] hop) {
+        int row = t * _m;
+        Arrays.fill(dist, row, row + _m, (char) UNREACHABLE);
+        SearchWorkspace ws = SearchWorkspace.acquire(_m);
+        try {
+            int[] q = ws.queue;
+            int head = 0, tail = 0;
+            q[tail++] = _cell[t];
+            dist[row + t] = 0;
+            while (head < tail) {
+                int cur = q[head++];
+                int x = cur / _h, y = cur - x * _h;
+                char nd = (char) (dist[row + _id[cur]] + 1);
+                for (int d = 0; d < 4; d++) {
+                    int nb = map.neighbor(cur, x, y, d);
+                    if (nb < 0) continue;
+                    int a = _id[nb];
+                    if (a < 0 || dist[row + a] != UNREACHABLE) continue;
+                    dist[row + a] = nd;
+                    hop[row + a] = (byte) ((d + 2) & 3); // From nb, step back towards cur.
+                    q[tail++] = nb;
+                }
+            }
+        } finally {
+            ws.release();
+        }
+    }
+
+    /** Numbers the walkable cells of the layout in flat order; fills id and returns the count. */
+    private static int numberCells(Key key, int[] id) {
+        int k = (key._h + 63) >>> 6, m = 0;
+        for (int x = 0; x < key._w; x++) {
+            for (int y = 0; y < key._h; y++) {
+                boolean open = (key._bits[x * k + (y >>> 6)] & (1L << y)) != 0;
+                id[x * key._h + y] = open ? m++ : -1;
+            }
+        }
+        return m;
+    }
+
+    private static int[] cellsOf(int[] id, int m) {
+        int[] ans = new int[m];
+        for (int i = 0; i < id.length; i++) {
+            if (id[i] >= 0) ans[id[i]] = i;
+        }
+        return ans;
+    }
+
+    /** @return the cell number of p, or -1 if p is null, outside the map or an obstacle. */
+    private int id(Pixel2D p) {
+        if (p == null) return -1;
+        int x = p.getX(), y = p.getY();
+        if (x < 0 || x >= _w || y < 0 || y >= _h) return -1;
+        return _id[x * _h + y];
+    }
+
+    /** A wall layout, compared by content, with a 64-bit content hash. */
+    private static final class Key {
+        private final int _w, _h;
+        private final boolean _cyclic;
+        private final long[] _bits;
+        private final long _hash;
+
+        Key(int w, int h, boolean cyclic, long[] bits) {
+            _w = w;
+            _h = h;
+            _cyclic = cyclic;
+            _bits = bits;
+            long hash = mix(((long) w << 32) ^ h ^ (cyclic ? 1L << 63 : 0));
+            for (long word : bits) hash = mix(hash ^ word);
+            _hash = hash;
+        }
+
+        /** The splitmix64 finalizer. */
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+        String fileName() {
+            return String.format("dist-%dx%d-%016x.ex3d", _w, _h, _hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return _hash == k._hash && _w == k._w && _h == k._h && _cyclic == k._cyclic && Arrays.equals(_bits, k._bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_hash);
+        }
+    }
+}
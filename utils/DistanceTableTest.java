@@ -0,0 +1,146 @@
+package assignments.Ex3.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit 5 Testing class for DistanceTable.
+ * Every pair is compared with a BFS from the target (Map.allDistance).
+ */
+public class DistanceTableTest {
+
+    /**
+     * Test 1: All pairs
+     * The distances match BFS, and following nextHop walks a shortest path.
+     */
+    @Test
+    void testMatchesBfs() {
+        Random rnd = new Random(4);
+        for (int round = 0; round < 12; round++) {
+            int w = 2 + rnd.nextInt(14), h = 2 + rnd.nextInt(14);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.3));
+            map.setCyclic(round % 2 == 0);
+            DistanceTable table = DistanceTable.of(map, 1);
+            for (int bx = 0; bx < w; bx++) {
+                for (int by = 0; by < h; by++) {
+                    Pixel2D b = new Index2D(bx, by);
+                    Map2D dist = map.allDistance(b, 1);
+                    for (int ax = 0; ax < w; ax++) {
+                        for (int ay = 0; ay < h; ay++) {
+                            Pixel2D a = new Index2D(ax, ay);
+                            int d = (map.getPixel(b) == 1) ? -1 : dist.getPixel(ax, ay);
+                            assertEquals(d, table.distance(a, b), a + " -> " + b);
+                            Pixel2D next = table.nextHop(a, b);
+                            if (d <= 0) {
+                                assertNull(next);
+                            } else {
+                                assertEquals(d - 1, dist.getPixel(next), "hop " + a + " -> " + b);
+                                assertEquals(1, map.shortestPath(a, next, 1).length - 1, "hop is not a neighbor");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test 2: Cache
+     * Boards with the same walls share a table whatever else is on them;
+     * another wall layout or cyclic flag gets its own table.
+     */
+    @Test
+    void testCacheByWallLayout() {
+        int[][] board = MapBenchmark.maze(new Random(1), 15, 15, 0.1);
+        Map a = new Map(board);
+        board[1][1] = 4; // A coin is not a wall.
+        Map b = new Map(board);
+        assertSame(DistanceTable.of(a, 1), DistanceTable.of(b, 1));
+
+        b.setCyclic(false);
+        assertNotSame(DistanceTable.of(a, 1), DistanceTable.of(b, 1));
+        b.setCyclic(true);
+        b.setPixel(1, 1, 1);
+        assertNotSame(DistanceTable.of(a, 1), DistanceTable.of(b, 1));
+    }
+
+    /**
+     * Test 3: Table files
+     * A saved table maps back with the same answers, the directory variant of of() writes a
+     * file named after the layout hash, and a damaged file is rejected by load() and replaced
+     * by of().
+     */
+    @Test
+    void testSaveAndLoad() throws IOException {
+        Path dir = Files.createTempDirectory("ex3-tables");
+        try {
+            Map map = new Map(MapBenchmark.maze(new Random(8), 21, 17, 0.2));
+            DistanceTable table = DistanceTable.of(map, 1, dir);
+            Path file = dir.resolve(String.format("dist-21x17-%016x.ex3d", table.layoutHash()));
+            assertTrue(Files.exists(file), "table file was not written");
+
+            DistanceTable loaded = DistanceTable.load(file);
+            assertEquals(table.size(), loaded.size());
+            assertEquals(table.layoutHash(), loaded.layoutHash());
+            for (int i = 0; i < 400; i++) {
+                Random rnd = new Random(i);
+                Pixel2D a = new Index2D(rnd.nextInt(21), rnd.nextInt(17));
+                Pixel2D b = new Index2D(rnd.nextInt(21), rnd.nextInt(17));
+                assertEquals(table.distance(a, b), loaded.distance(a, b));
+                assertEquals(table.nextHop(a, b), loaded.nextHop(a, b));
+            }
+
+            Path broken = dir.resolve("broken.ex3d");
+            Files.write(broken, java.util.Arrays.copyOf(Files.readAllBytes(file), 100));
+            assertThrows(RuntimeException.class, () -> DistanceTable.load(broken));
+            Files.write(broken, new byte[]{1, 2, 3});
+            assertThrows(RuntimeException.class, () -> DistanceTable.load(broken));
+
+            // of() treats a damaged table file as a miss: it rebuilds the table and rewrites the file.
+            Files.write(file, java.util.Arrays.copyOf(Files.readAllBytes(file), 100));
+            DistanceTable.clearCache();
+            DistanceTable rebuilt = DistanceTable.of(map, 1, dir);
+            assertNotSame(table, rebuilt);
+            assertEquals(table.size(), rebuilt.size());
+            assertEquals(table.distance(new Index2D(0, 0), new Index2D(20, 16)),
+                    rebuilt.distance(new Index2D(0, 0), new Index2D(20, 16)));
+            assertEquals(table.size(), DistanceTable.load(file).size(), "the file was not rewritten");
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Test 4: Limits
+     * Too many walkable cells give no table, and full-size tables stay under the cache cap.
+     */
+    @Test
+    void testLimits() {
+        assertNull(DistanceTable.of(new Map(100, 100, 0), 1), "10000 cells is above MAX_CELLS");
+        DistanceTable table = DistanceTable.of(new Map(3, 3, 0), 1);
+        assertEquals(9, table.size());
+        assertEquals(-1, table.distance(new Index2D(0, 0), new Index2D(3, 0)));
+        assertEquals(-1, table.distance(null, new Index2D(0, 0)));
+        assertThrows(RuntimeException.class, () -> DistanceTable.of(null, 1));
+
+        // Three full-size layouts (12 MB each) do not fit under the cap together.
+        Map open = new Map(64, DistanceTable.MAX_CELLS / 64, 0), walled = new Map(open);
+        walled.setPixel(0, 0, 1);
+        Map flat = new Map(open);
+        flat.setCyclic(false);
+        for (Map m : new Map[]{open, flat, walled}) {
+            DistanceTable full = DistanceTable.of(m, 1);
+            assertNotNull(full);
+            assertSame(full, DistanceTable.of(m, 1), "the newest table is always kept");
+            assertTrue(DistanceTable.cachedBytes() <= DistanceTable.MAX_CACHE_BYTES);
+        }
+    }
+}
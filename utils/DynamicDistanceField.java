@@ -0,0 +1,352 @@
+package assignments.Ex3.utils;
+
+/**
+ * A multi-source distance field over a {@link Map} that is repaired in place when
+ * cells or sources change, instead of being recomputed with a full BFS.
+ * Every walkable cell holds the maze distance (4-neighbors, cyclic if the map is) to its
+ * nearest source.
+ *
+ * Changes are handled like in dynamic BFS (Ramalingam-Reps for unit weights):
+ * 1. Lower: a cell whose distance can only drop (a new source, an opened cell) is relaxed,
+ *    and the improvement spreads outwards in distance order.
+ * 2. Raise: when a source is removed or a cell is blocked, the cells that were reached through it
+ *    are checked in increasing order of their old distance. A cell that still has a neighbor one
+ *    step closer keeps its distance; the others are invalidated and their neighbors checked in turn.
+ *    The invalidated cells then take the best distance of their valid neighbors and are lowered again.
+ * Only the cells whose distance changes (plus their border) are touched, so small changes cost
+ * little even on a large map. The number of touched cells is kept in {@link #getLastRepairCount()}.
+ *
+ * The field reads the map it was built on. After changing a cell of the map, call
+ * {@link #cellChanged(int, int)} (or change it through {@link #setPixel(int, int, int)}).
+ * Changing the size or the cyclic flag of the map requires a new field.
+ */
+public class DynamicDistanceField {
+    private static final int INF = Integer.MAX_VALUE;
+
+    private final Map _map;
+    private final int _obs, _w, _h;
+    /** Distance to the nearest source, INF if unreachable or blocked. */
+    private final int[] _dist;
+    /** Number of sources on each cell (sources may share a cell). */
+    private final int[] _sources;
+    /** Walkability of each cell, as of the last notification. */
+    private final boolean[] _open;
+    private int _lastRepair = 0;
+
+    /**
+     * Builds the field with one BFS from all the sources.
+     *
+     * @param map the map (the field keeps a reference to it)
+     * @param obsColor obstacle value
+     * @param sources the initial sources; sources outside the map are ignored
+     * @throws RuntimeException if map is null
+     */
+    public DynamicDistanceField(Map map, int obsColor, Pixel2D... sources) {
+        if (map == null) throw new RuntimeException("Map is null");
+        _map = map;
+        _obs = obsColor;
+        _w = map.getWidth();
+        _h = map.getHeight();
+        int n = _w * _h;
+        _dist = new int[n];
+        _sources = new int[n];
+        _open = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            _open[i] = map.cell(i) != obsColor;
+            _dist[i] = INF;
+        }
+        if (sources != null) {
+            for (Pixel2D p : sources) {
+                if (isInside(p)) _sources[_map.index(p.getX(), p.getY())]++;
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return the distance from (x,y) to its nearest source, or -1 if none reaches it
+     * (or the cell is an obstacle or outside the map)
+     */
+    public int getDistance(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h) return -1;
+        int d = _dist[_map.index(x, y)];
+        return (d == INF) ? -1 : d;
+    }
+
+    /**
+     * @param p pixel
+     * @return same as {@link #getDistance(int, int)}
+     * @throws RuntimeException if p is null
+     */
+    public int getDistance(Pixel2D p) {
+        if (p == null) throw new RuntimeException("Pixel2D is null");
+        return getDistance(p.getX(), p.getY());
+    }
+
+    /**
+     * @return a new map holding the current distances, in the format of
+     * {@link Map#allDistance(Pixel2D[], int)} (-1 where unreachable)
+     */
+    public Map2D toMap() {
+        Map ans = new Map(_w, _h, -1);
+        ans.setCyclic(_map.isCyclic());
+        for (int i = 0; i < _dist.length; i++) {
+            if (_dist[i] != INF) ans.setCell(i, _dist[i]);
+        }
+        return ans;
+    }
+
+    /**
+     * @return the number of cells whose distance was invalidated or lowered by the last change
+     */
+    public int getLastRepairCount() {
+        return _lastRepair;
+    }
+
+    /**
+     * Adds a source (a source on an obstacle only counts once the cell opens).
+     *
+     * @param p the source pixel
+     * @throws RuntimeException if p is null or outside the map
+     */
+    public void addSource(Pixel2D p) {
+        int i = requireCell(p);
+        _lastRepair = 0;
+        if (_sources[i]++ > 0 || !_open[i]) return;
+        lowerFrom(i, 0);
+    }
+
+    /**
+     * Removes one source from a cell.
+     *
+     * @param p the source pixel
+     * @throws RuntimeException if p is null, outside the map, or not a source
+     */
+    public void removeSource(Pixel2D p) {
+        int i = requireCell(p);
+        if (_sources[i] == 0) throw new RuntimeException("No source at " + p);
+        _lastRepair = 0;
+        if (--_sources[i] > 0 || !_open[i]) return;
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int size = PathSearch.push(ws, 0, key(0, i));
+            repair(ws, size);
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Moves one source (e.g. a ghost that made a step).
+     *
+     * @param from the current source pixel
+     * @param to the new source pixel
+     * @throws RuntimeException if a pixel is null or outside the map, or from is not a source
+     */
+    public void moveSource(Pixel2D from, Pixel2D to) {
+        int a = requireCell(from), b = requireCell(to);
+        if (_sources[a] == 0) throw new RuntimeException("No source at " + from);
+        if (a == b) {
+            _lastRepair = 0;
+            return;
+        }
+        // Adding first keeps most cells supported while the old source is taken out.
+        addSource(to);
+        int lowered = _lastRepair;
+        removeSource(from);
+        _lastRepair += lowered;
+    }
+
+    /**
+     * Changes a cell of the map and repairs the field.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param v the new value
+     */
+    public void setPixel(int x, int y, int v) {
+        _map.setPixel(x, y, v);
+        cellChanged(x, y);
+    }
+
+    /**
+     * Notifies the field that cell (x,y) of the map was changed.
+     * Nothing is repaired unless the cell became (or stopped being) an obstacle.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public void cellChanged(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h) throw new RuntimeException("Pixel out of bounds: " + x + "," + y);
+        int i = _map.index(x, y);
+        boolean open = _map.cell(i) != _obs;
+        _lastRepair = 0;
+        if (open == _open[i]) return;
+        _open[i] = open;
+
+        if (open) {
+            int best = (_sources[i] > 0) ? 0 : bestNeighbor(i);
+            if (best != INF) lowerFrom(i, best);
+            return;
+        }
+
+        int old = _dist[i];
+        _dist[i] = INF;
+        if (old == INF) return;
+        _lastRepair = 1;
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int size = 0;
+            int cx = i / _h, cy = i - cx * _h;
+            for (int d = 0; d < 4; d++) {
+                int nb = _map.neighbor(i, cx, cy, d);
+                if (nb >= 0 && _open[nb] && _dist[nb] == old + 1) size = PathSearch.push(ws, size, key(old + 1, nb));
+            }
+            repair(ws, size);
+        } finally {
+            ws.release();
+        }
+    }
+
+    // ----------------- private helpers -----------------
+
+    /** Full multi-source BFS (all sources are at distance 0, so a FIFO queue is enough). */
+    private void rebuild() {
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int[] q = ws.queue;
+            int head = 0, tail = 0;
+            for (int i = 0; i < _dist.length; i++) {
+                if (_sources[i] > 0 && _open[i]) {
+                    _dist[i] = 0;
+                    q[tail++] = i;
+                }
+            }
+            while (head < tail) {
+                int cur = q[head++];
+                int x = cur / _h, y = cur - x * _h;
+                int nd = _dist[cur] + 1;
+                for (int d = 0; d < 4; d++) {
+                    int nb = _map.neighbor(cur, x, y, d);
+                    if (nb < 0 || !_open[nb] || _dist[nb] != INF) continue;
+                    _dist[nb] = nd;
+                    q[tail++] = nb;
+                }
+            }
+        } finally {
+            ws.release();
+        }
+    }
+
+    /** Sets cell i to distance d and spreads the improvement. */
+    private void lowerFrom(int i, int d) {
+        if (d >= _dist[i]) return;
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            _dist[i] = d;
+            _lastRepair++;
+            lower(ws, PathSearch.push(ws, 0, key(d, i)));
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Raise phase followed by the lower phase.
+     *
+     * @param ws a started workspace whose heap holds the (old distance, cell) keys to check
+     * @param size the heap size
+     */
+    private void repair(SearchWorkspace ws, int size) {
+        int[] invalid = ws.queue;
+        int count = 0;
+        while (size > 0) {
+            long top = ws.heap[0];
+            size = PathSearch.pop(ws.heap, size);
+            int v = (int) top, d = (int) (top >>> 32);
+            if (_dist[v] != d) continue; // Already invalidated.
+            if (_sources[v] > 0 || isSupported(v, d)) continue;
+            _dist[v] = INF;
+            invalid[count++] = v;
+            int x = v / _h, y = v - x * _h;
+            for (int dir = 0; dir < 4; dir++) {
+                int nb = _map.neighbor(v, x, y, dir);
+                if (nb >= 0 && _open[nb] && _dist[nb] == d + 1) size = PathSearch.push(ws, size, key(d + 1, nb));
+            }
+        }
+        _lastRepair += count;
+
+        // Re-seed the invalidated cells from their valid neighbors.
+        size = 0;
+        for (int j = 0; j < count; j++) {
+            int v = invalid[j];
+            int best = bestNeighbor(v);
+            if (best == INF || best >= _dist[v]) continue;
+            _dist[v] = best;
+            size = PathSearch.push(ws, size, key(best, v));
+        }
+        lower(ws, size);
+    }
+
+    /**
+     * Lower phase: Dijkstra-like relaxation in distance order from the cells in the heap.
+     *
+     * @param ws a started workspace whose heap holds the (distance, cell) keys to spread
+     * @param size the heap size
+     */
+    private void lower(SearchWorkspace ws, int size) {
+        while (size > 0) {
+            long top = ws.heap[0];
+            size = PathSearch.pop(ws.heap, size);
+            int v = (int) top, d = (int) (top >>> 32);
+            if (_dist[v] != d) continue; // Stale entry.
+            int x = v / _h, y = v - x * _h;
+            for (int dir = 0; dir < 4; dir++) {
+                int nb = _map.neighbor(v, x, y, dir);
+                if (nb < 0 || !_open[nb] || _dist[nb] <= d + 1) continue;
+                _dist[nb] = d + 1;
+                _lastRepair++;
+                size = PathSearch.push(ws, size, key(d + 1, nb));
+            }
+        }
+    }
+
+    /** @return true iff cell v (at distance d > 0) has a walkable neighbor at distance d-1. */
+    private boolean isSupported(int v, int d) {
+        int x = v / _h, y = v - x * _h;
+        for (int dir = 0; dir < 4; dir++) {
+            int nb = _map.neighbor(v, x, y, dir);
+            if (nb >= 0 && _open[nb] && _dist[nb] == d - 1) return true;
+        }
+        return false;
+    }
+
+    /** @return 1 + the smallest finite distance among the walkable neighbors of v, or INF. */
+    private int bestNeighbor(int v) {
+        int x = v / _h, y = v - x * _h;
+        int best = INF;
+        for (int dir = 0; dir < 4; dir++) {
+            int nb = _map.neighbor(v, x, y, dir);
+            if (nb >= 0 && _open[nb] && _dist[nb] != INF) best = Math.min(best, _dist[nb] + 1);
+        }
+        return best;
+    }
+
+    private static long key(int d, int cell) {
+        return ((long) d << 32) | cell;
+    }
+
+    private boolean isInside(Pixel2D p) {
+        return p != null && p.getX() >= 0 && p.getX() < _w && p.getY() >= 0 && p.getY() < _h;
+    }
+
+    /** @return the flat index of p. */
+    private int requireCell(Pixel2D p) {
+        if (p == null) throw new RuntimeException("Pixel2D is null");
+        if (!isInside(p)) throw new RuntimeException("Pixel out of bounds: " + p);
+        return _map.index(p.getX(), p.getY());
+    }
+}
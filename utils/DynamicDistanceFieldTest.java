@@ -0,0 +1,98 @@
+package assignments.Ex3.utils;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit 5 Testing class for DynamicDistanceField.
+ * Every repaired field is compared with a fresh multi-source BFS (Map.allDistance).
+ */
+public class DynamicDistanceFieldTest {
+
+    /**
+     * Test 1: Random changes
+     * Blocks/opens cells and adds/removes/moves sources at random, and checks the whole field
+     * after every change.
+     */
+    @Test
+    void testMatchesFullBfs() {
+        Random rnd = new Random(3);
+        for (int round = 0; round < 30; round++) {
+            int w = 3 + rnd.nextInt(20), h = 3 + rnd.nextInt(20);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.25));
+            map.setCyclic(round % 2 == 0);
+            ArrayList<Pixel2D> sources = new ArrayList<>();
+            for (int i = 0; i < 3; i++) sources.add(new Index2D(rnd.nextInt(w), rnd.nextInt(h)));
+            DynamicDistanceField field = new DynamicDistanceField(map, 1, sources.toArray(new Pixel2D[0]));
+            assertSameField(map, sources, field);
+
+            for (int step = 0; step < 60; step++) {
+                int op = rnd.nextInt(4);
+                Pixel2D p = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                if (op == 0) {
+                    field.setPixel(p.getX(), p.getY(), map.getPixel(p) == 1 ? 0 : 1);
+                } else if (op == 1 || sources.isEmpty()) {
+                    field.addSource(p);
+                    sources.add(p);
+                } else if (op == 2) {
+                    field.removeSource(sources.remove(rnd.nextInt(sources.size())));
+                } else {
+                    int s = rnd.nextInt(sources.size());
+                    field.moveSource(sources.get(s), p);
+                    sources.set(s, p);
+                }
+                assertSameField(map, sources, field);
+            }
+        }
+    }
+
+    /**
+     * Test 2: Local repair
+     * Blocking one cell far from the source of an open 100x100 map only touches a few cells,
+     * and a change of a non-wall value (e.g. a coin eaten) touches none.
+     */
+    @Test
+    void testRepairIsLocal() {
+        Map map = new Map(100, 100, 0);
+        map.setCyclic(false);
+        DynamicDistanceField field = new DynamicDistanceField(map, 1, new Index2D(50, 50));
+        assertEquals(60, field.getDistance(90, 30));
+
+        field.setPixel(90, 30, 1);
+        assertEquals(-1, field.getDistance(90, 30));
+        assertEquals(61, field.getDistance(91, 30));
+        assertTrue(field.getLastRepairCount() < 10, "repaired " + field.getLastRepairCount());
+
+        field.setPixel(20, 20, 4);
+        assertEquals(0, field.getLastRepairCount());
+        assertEquals(60, field.getDistance(20, 20));
+    }
+
+    /**
+     * Test 3: Argument checks
+     */
+    @Test
+    void testInvalidArguments() {
+        DynamicDistanceField field = new DynamicDistanceField(new Map(5, 5, 0), 1);
+        assertEquals(-1, field.getDistance(2, 2));
+        assertThrows(RuntimeException.class, () -> field.removeSource(new Index2D(1, 1)));
+        assertThrows(RuntimeException.class, () -> field.addSource(new Index2D(5, 0)));
+        assertThrows(RuntimeException.class, () -> field.addSource(null));
+        assertThrows(RuntimeException.class, () -> field.cellChanged(-1, 0));
+        assertEquals(-1, field.getDistance(7, 7));
+    }
+
+    private static void assertSameField(Map map, ArrayList<Pixel2D> sources, DynamicDistanceField field) {
+        Map2D expected = map.allDistance(sources.toArray(new Pixel2D[0]), 1);
+        Map2D actual = field.toMap();
+        for (int x = 0; x < map.getWidth(); x++) {
+            for (int y = 0; y < map.getHeight(); y++) {
+                assertEquals(expected.getPixel(x, y), actual.getPixel(x, y), "distance at " + x + "," + y);
+                assertEquals(expected.getPixel(x, y), field.getDistance(x, y));
+            }
+        }
+    }
+}
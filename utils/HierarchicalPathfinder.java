@@ -0,0 +1,595 @@
+package assignments.Ex3.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical path finding (HPA*) over a {@link Map}, for maps too large for a full A* per query.
+ *
+ * The map is split into square clusters of {@code clusterSize} cells (the last row/column of
+ * clusters may be narrower). Along every border between two neighboring clusters - including
+ * the wrap-around borders of a cyclic map - each run of cell pairs that are walkable on both
+ * sides is an entrance, with one transition in its middle (two, at its ends, if the run is
+ * 6 cells or longer). The two cells of a transition are nodes of the abstract graph, joined by
+ * an edge of cost 1, and the nodes of a cluster are joined by their BFS distance inside the cluster.
+ *
+ * A query connects the start and the target to the nodes of their clusters (one BFS inside each
+ * of the two clusters), runs A* on the abstract graph, and refines the abstract path into cells
+ * with a BFS inside one cluster per abstract edge. {@link #nextStep} refines only the first
+ * edge, and {@link #distance} none. The returned paths are valid and their length is exactly
+ * {@link #distance}, but, as with every HPA*, they are not always the shortest ones - they
+ * may detour through the transitions (typically by a few percent).
+ *
+ * The pathfinder reads the map it was built on. After changing a cell of the map, call
+ * {@link #cellChanged(int, int)} (or change it through {@link #setPixel(int, int, int)}):
+ * only the cluster of the cell is rebuilt, plus its neighbor when the cell lies on a border.
+ * Changing the size or the cyclic flag of the map requires a new pathfinder.
+ * A pathfinder is not thread-safe (it keeps per-cluster scratch buffers).
+ */
+public class HierarchicalPathfinder {
+    /** The default cluster side. */
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+    /** Runs of at least this many open cell pairs get a transition at each end. */
+    private static final int LONG_ENTRANCE = 6;
+
+    private final Map _map;
+    private final int _obs, _w, _h, _size;
+    private final boolean _cyclic;
+    /** Number of cluster columns / rows. */
+    private final int _cw, _ch;
+    /** Upper bound on the nodes of one cluster; node ids are cluster * _maxNodes + local index. */
+    private final int _maxNodes;
+    /** Walkability of each cell (bit per cell), as of the last notification. */
+    private final long[] _open;
+    /** Per cluster: the cells of its nodes. */
+    private final int[][] _nodes;
+    /** Per cluster: the k*k distances between its nodes inside the cluster (-1 if none). */
+    private final int[][] _dist;
+    /** Per cluster: transitions (own cell, neighbor cell) with the right neighbor (x+1). */
+    private final int[][] _right;
+    /** Per cluster: transitions (own cell, neighbor cell) with the lower neighbor (y+1). */
+    private final int[][] _down;
+    private int _lastRebuild = 0;
+    /** Length of the path found by the last successful search. */
+    private int _lastCost = 0;
+
+    // Scratch buffers for the BFS inside one cluster (local index lx*side + ly).
+    private final int[] _queue, _local, _parent, _goalDist, _transitions;
+
+    /**
+     * Builds the abstract graph with the default cluster size.
+     *
+     * @param map the map (the pathfinder keeps a reference to it)
+     * @param obsColor obstacle value
+     * @throws RuntimeException if map is null
+     */
+    public HierarchicalPathfinder(Map map, int obsColor) {
+        this(map, obsColor, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Builds the abstract graph: all the entrances, then the distances inside every cluster.
+     *
+     * @param map the map (the pathfinder keeps a reference to it)
+     * @param obsColor obstacle value
+     * @param clusterSize the side of a cluster, at least 2
+     * @throws RuntimeException if map is null or clusterSize is below 2
+     */
+    public HierarchicalPathfinder(Map map, int obsColor, int clusterSize) {
+        if (map == null) throw new RuntimeException("Map is null");
+        if (clusterSize < 2) throw new RuntimeException("Cluster size must be at least 2: " + clusterSize);
+        _map = map;
+        _obs = obsColor;
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _size = clusterSize;
+        _cyclic = map.isCyclic();
+        _cw = (_w + clusterSize - 1) / clusterSize;
+        _ch = (_h + clusterSize - 1) / clusterSize;
+        // At most (size+1)/2 runs per border side and 2 transitions per run of 6+ cells.
+        _maxNodes = 4 * (clusterSize / 2 + 2);
+
+        int n = _w * _h;
+        _open = new long[(n + 63) >>> 6];
+        for (int i = 0; i < n; i++) {
+            if (map.cell(i) != obsColor) _open[i >>> 6] |= 1L << i;
+        }
+        int clusters = _cw * _ch;
+        _nodes = new int[clusters][];
+        _dist = new int[clusters][];
+        _right = new int[clusters][];
+        _down = new int[clusters][];
+        int cells = clusterSize * clusterSize;
+        _queue = new int[cells];
+        _local = new int[cells];
+        _parent = new int[cells];
+        _goalDist = new int[cells];
+        _transitions = new int[4 * clusterSize + 4];
+
+        for (int k = 0; k < clusters; k++) {
+            _right[k] = border(k, right(k), true);
+            _down[k] = border(k, down(k), false);
+        }
+        for (int k = 0; k < clusters; k++) buildCluster(k);
+        _lastRebuild = clusters;
+    }
+
+    /**
+     * Finds a path from p1 to p2 and refines it completely.
+     *
+     * @param p1 start pixel
+     * @param p2 target pixel
+     * @return a path including p1 and p2 (see the class comment on optimality), or null if unreachable
+     * @throws RuntimeException if a pixel is null or outside the map
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2) {
+        int s = requireCell(p1), t = requireCell(p2);
+        if (!isOpen(s) || !isOpen(t)) return null;
+        if (s == t) return new Pixel2D[]{ new Index2D(p1) };
+        int[] waypoints = search(s, t);
+        if (waypoints == null) return null;
+
+        Pixel2D[] path = new Pixel2D[_lastCost + 1];
+        path[0] = _map.pixelAt(s);
+        int at = 1;
+        for (int i = 1; i < waypoints.length; i++) {
+            at = refine(waypoints[i - 1], waypoints[i], path, at, Integer.MAX_VALUE);
+        }
+        return path;
+    }
+
+    /**
+     * Finds a path from p1 to p2 but refines only its first abstract edge - the cheap way to
+     * take one step per game tick.
+     *
+     * @param p1 start pixel
+     * @param p2 target pixel
+     * @return the pixel after p1 on the path of {@link #shortestPath}, p1 itself if p1 equals p2,
+     * or null if p2 is unreachable
+     * @throws RuntimeException if a pixel is null or outside the map
+     */
+    public Pixel2D nextStep(Pixel2D p1, Pixel2D p2) {
+        int s = requireCell(p1), t = requireCell(p2);
+        if (!isOpen(s) || !isOpen(t)) return null;
+        if (s == t) return new Index2D(p1);
+        int[] waypoints = search(s, t);
+        if (waypoints == null) return null;
+        Pixel2D[] first = new Pixel2D[2];
+        refine(s, waypoints[1], first, 1, 1);
+        return first[1];
+    }
+
+    /**
+     * @param p1 start pixel
+     * @param p2 target pixel
+     * @return the length (in steps) of the path {@link #shortestPath} returns, or -1 if unreachable
+     * (no refinement is done)
+     * @throws RuntimeException if a pixel is null or outside the map
+     */
+    public int distance(Pixel2D p1, Pixel2D p2) {
+        int s = requireCell(p1), t = requireCell(p2);
+        if (!isOpen(s) || !isOpen(t)) return -1;
+        if (s == t) return 0;
+        return (search(s, t) == null) ? -1 : _lastCost;
+    }
+
+    /**
+     * Changes a cell of the map and updates the abstract graph.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param v the new value
+     */
+    public void setPixel(int x, int y, int v) {
+        _map.setPixel(x, y, v);
+        cellChanged(x, y);
+    }
+
+    /**
+     * Notifies the pathfinder that cell (x,y) of the map was changed.
+     * Nothing is rebuilt unless the cell became (or stopped being) an obstacle.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @throws RuntimeException if (x,y) is outside the map
+     */
+    public void cellChanged(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h) throw new RuntimeException("Pixel out of bounds: " + x + "," + y);
+        int i = _map.index(x, y);
+        boolean open = _map.cell(i) != _obs;
+        _lastRebuild = 0;
+        if (open == isOpen(i)) return;
+        _open[i >>> 6] ^= 1L << i;
+
+        int k = clusterOf(i);
+        int cx = k / _ch, cy = k - cx * _ch;
+        int lx = x - cx * _size, ly = y - cy * _size;
+        int[] dirty = new int[5];
+        int count = 0;
+        dirty[count++] = k;
+        int r = right(k), l = left(k), d = down(k), u = up(k);
+        if (r >= 0 && lx == width(cx) - 1) {
+            _right[k] = border(k, r, true);
+            dirty[count++] = r;
+        }
+        if (l >= 0 && lx == 0) {
+            _right[l] = border(l, k, true);
+            dirty[count++] = l;
+        }
+        if (d >= 0 && ly == height(cy) - 1) {
+            _down[k] = border(k, d, false);
+            dirty[count++] = d;
+        }
+        if (u >= 0 && ly == 0) {
+            _down[u] = border(u, k, false);
+            dirty[count++] = u;
+        }
+        for (int j = 0; j < count; j++) {
+            boolean seen = false;
+            for (int m = 0; m < j; m++) seen |= dirty[m] == dirty[j];
+            if (seen) continue;
+            buildCluster(dirty[j]);
+            _lastRebuild++;
+        }
+    }
+
+    /**
+     * @return the number of clusters rebuilt by the last change (all of them after construction)
+     */
+    public int getLastRebuildCount() {
+        return _lastRebuild;
+    }
+
+    /**
+     * @return the number of clusters
+     */
+    public int getClusterCount() {
+        return _cw * _ch;
+    }
+
+    /**
+     * @return the number of nodes of the abstract graph
+     */
+    public int getNodeCount() {
+        int ans = 0;
+        for (int[] nodes : _nodes) ans += nodes.length;
+        return ans;
+    }
+
+    // ----------------- private helpers -----------------
+
+    /**
+     * A* on the abstract graph, with the start and the target as two extra nodes.
+     *
+     * @param s start cell (walkable)
+     * @param t target cell (walkable, different from s)
+     * @return the waypoints s, node cells..., t (consecutive duplicates removed), or null if unreachable
+     */
+    private int[] search(int s, int t) {
+        int ks = clusterOf(s), kt = clusterOf(t);
+        int start = _cw * _ch * _maxNodes, goal = start + 1;
+        int tx = t / _h, ty = t - tx * _h;
+
+        // Distances from the target to every cell of its cluster (edges node -> goal).
+        bfs(kt, t, _goalDist, null);
+        int direct = (ks == kt) ? _goalDist[localOf(kt, s)] : -1;
+
+        SearchWorkspace ws = SearchWorkspace.acquire(goal + 1);
+        try {
+            int[] g = ws.dist(), parent = ws.parent;
+            ws.mark(start);
+            g[start] = 0;
+            parent[start] = start;
+            int size = PathSearch.push(ws, 0, key(heuristic(s, tx, ty), start));
+
+            // Edges start -> nodes of its cluster.
+            bfs(ks, s, _local, null);
+            int[] nodes = _nodes[ks];
+            for (int j = 0; j < nodes.length; j++) {
+                int d = _local[localOf(ks, nodes[j])];
+                if (d >= 0) size = relax(ws, size, start, ks * _maxNodes + j, d, nodes[j], tx, ty);
+            }
+            if (direct >= 0) size = relax(ws, size, start, goal, direct, t, tx, ty);
+
+            while (size > 0) {
+                long top = ws.heap[0];
+                size = PathSearch.pop(ws.heap, size);
+                int u = (int) top;
+                if (u == goal) {
+                    _lastCost = g[goal];
+                    return waypoints(parent, start, goal, s, t);
+                }
+                if (u == start) continue;
+                int k = u / _maxNodes, j = u - k * _maxNodes;
+                int c = _nodes[k][j];
+                int gu = g[u];
+                if (gu + heuristic(c, tx, ty) != (int) (top >>> 32)) continue; // Stale entry.
+                ws.expanded++;
+
+                // Intra-cluster edges.
+                int[] kn = _nodes[k];
+                int[] dist = _dist[k];
+                for (int m = 0; m < kn.length; m++) {
+                    int d = dist[j * kn.length + m];
+                    if (m != j && d >= 0) size = relax(ws, size, u, k * _maxNodes + m, gu + d, kn[m], tx, ty);
+                }
+                if (k == kt) {
+                    int d = _goalDist[localOf(kt, c)];
+                    if (d >= 0) size = relax(ws, size, u, goal, gu + d, t, tx, ty);
+                }
+                // Inter-cluster edges (cost 1), across the four borders.
+                size = cross(ws, size, u, gu, c, _right[k], 0, right(k), tx, ty);
+                size = cross(ws, size, u, gu, c, _down[k], 0, down(k), tx, ty);
+                int l = left(k), up = up(k);
+                if (l >= 0) size = cross(ws, size, u, gu, c, _right[l], 1, l, tx, ty);
+                if (up >= 0) size = cross(ws, size, u, gu, c, _down[up], 1, up, tx, ty);
+            }
+            return null;
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Relaxes the transitions of one border that start at cell c.
+     *
+     * @param side 0 if c is the first cell of the pairs, 1 if it is the second
+     * @param other the cluster on the other side of the border
+     * @return the new heap size
+     */
+    private int cross(SearchWorkspace ws, int size, int u, int gu, int c, int[] pairs, int side, int other,
+                      int tx, int ty) {
+        if (pairs == null) return size;
+        for (int p = 0; p < pairs.length; p += 2) {
+            if (pairs[p + side] != c) continue;
+            int cell = pairs[p + 1 - side];
+            int v = other * _maxNodes + nodeIndex(other, cell);
+            size = relax(ws, size, u, v, gu + 1, cell, tx, ty);
+        }
+        return size;
+    }
+
+    /** Offers cost g to node v (at cell) through u. @return the new heap size */
+    private int relax(SearchWorkspace ws, int size, int u, int v, int g, int cell, int tx, int ty) {
+        int[] dist = ws.dist();
+        if (ws.isMarked(v) && dist[v] <= g) return size;
+        ws.mark(v);
+        dist[v] = g;
+        ws.parent[v] = u;
+        return PathSearch.push(ws, size, key(g + heuristic(cell, tx, ty), v));
+    }
+
+    /** @return the cells along the parent chain from start to goal, without consecutive duplicates. */
+    private int[] waypoints(int[] parent, int start, int goal, int s, int t) {
+        int len = 1;
+        for (int v = goal; v != start; v = parent[v]) len++;
+        int[] ans = new int[len];
+        int n = len;
+        for (int v = goal; ; v = parent[v]) {
+            int cell = (v == goal) ? t : (v == start) ? s : _nodes[v / _maxNodes][v % _maxNodes];
+            if (n == len || ans[n] != cell) ans[--n] = cell;
+            if (v == start) break;
+        }
+        return Arrays.copyOfRange(ans, n, len);
+    }
+
+    /**
+     * Writes the cells after a on the abstract edge a -> b into path[at...]: the BFS runs from b,
+     * so following the parents from a walks towards b.
+     *
+     * @param max the largest number of cells to write
+     * @return the index after the last written cell
+     */
+    private int refine(int a, int b, Pixel2D[] path, int at, int max) {
+        int k = clusterOf(a);
+        if (k != clusterOf(b)) {
+            path[at] = _map.pixelAt(b);
+            return at + 1;
+        }
+        bfs(k, b, _local, _parent);
+        int cx = k / _ch, cy = k - cx * _ch, ch = height(cy);
+        int x0 = cx * _size, y0 = cy * _size;
+        int lb = localOf(k, b);
+        for (int l = localOf(k, a); l != lb && max > 0; max--) {
+            l = _parent[l];
+            int lx = l / ch;
+            path[at++] = new Index2D(x0 + lx, y0 + l - lx * ch);
+        }
+        return at;
+    }
+
+    /**
+     * BFS inside cluster k (wrapping only if the cluster spans a whole cyclic axis).
+     *
+     * @param k the cluster
+     * @param src the start cell (in k)
+     * @param dist receives the distance of every local cell, -1 if unreachable
+     * @param parent receives the local parent of every reached cell, or null
+     */
+    private void bfs(int k, int src, int[] dist, int[] parent) {
+        int cx = k / _ch, cy = k - cx * _ch;
+        int cw = width(cx), ch = height(cy);
+        int x0 = cx * _size, y0 = cy * _size;
+        boolean wrapX = _cyclic && cw == _w, wrapY = _cyclic && ch == _h;
+        Arrays.fill(dist, 0, cw * ch, -1);
+        int[] q = _queue;
+        int head = 0, tail = 0;
+        int ls = localOf(k, src);
+        dist[ls] = 0;
+        if (parent != null) parent[ls] = ls;
+        q[tail++] = ls;
+        while (head < tail) {
+            int cur = q[head++];
+            int lx = cur / ch, ly = cur - lx * ch;
+            int nd = dist[cur] + 1;
+            for (int d = 0; d < 4; d++) {
+                int nx = lx + Map.DX[d], ny = ly + Map.DY[d];
+                if (nx < 0 || nx >= cw) {
+                    if (!wrapX) continue;
+                    nx = (nx < 0) ? cw - 1 : 0;
+                }
+                if (ny < 0 || ny >= ch) {
+                    if (!wrapY) continue;
+                    ny = (ny < 0) ? ch - 1 : 0;
+                }
+                int nb = nx * ch + ny;
+                if (dist[nb] >= 0 || !isOpen((x0 + nx) * _h + y0 + ny)) continue;
+                dist[nb] = nd;
+                if (parent != null) parent[nb] = cur;
+                q[tail++] = nb;
+            }
+        }
+    }
+
+    /** Collects the nodes of cluster k from its four borders and computes their distances. */
+    private void buildCluster(int k) {
+        int[] nodes = new int[_maxNodes];
+        int count = 0;
+        count = addNodes(nodes, count, _right[k], 0);
+        count = addNodes(nodes, count, _down[k], 0);
+        int l = left(k), u = up(k);
+        if (l >= 0) count = addNodes(nodes, count, _right[l], 1);
+        if (u >= 0) count = addNodes(nodes, count, _down[u], 1);
+        nodes = Arrays.copyOf(nodes, count);
+
+        int[] dist = new int[count * count];
+        for (int j = 0; j < count; j++) {
+            bfs(k, nodes[j], _local, null);
+            for (int m = 0; m < count; m++) dist[j * count + m] = _local[localOf(k, nodes[m])];
+        }
+        _nodes[k] = nodes;
+        _dist[k] = dist;
+    }
+
+    /** Adds the cells on one side of the transitions to nodes (once each). @return the new count */
+    private static int addNodes(int[] nodes, int count, int[] pairs, int side) {
+        if (pairs == null) return count;
+        for (int p = side; p < pairs.length; p += 2) {
+            int c = pairs[p];
+            boolean seen = false;
+            for (int j = 0; j < count && !seen; j++) seen = nodes[j] == c;
+            if (!seen) nodes[count++] = c;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the transitions between cluster k and its neighbor (to the right if horizontal,
+     * below otherwise).
+     *
+     * @return the (cell in k, cell in neighbor) pairs, or null if there is no such neighbor
+     */
+    private int[] border(int k, int neighbor, boolean horizontal) {
+        if (neighbor < 0) return null;
+        int cx = k / _ch, cy = k - cx * _ch;
+        int nx = neighbor / _ch, ny = neighbor - nx * _ch;
+        // Cells of k along the border, and the step to their partners in the neighbor.
+        int len, first, other, step;
+        if (horizontal) {
+            len = height(cy);
+            first = (cx * _size + width(cx) - 1) * _h + cy * _size;
+            other = (nx * _size) * _h + cy * _size;
+            step = 1;
+        } else {
+            len = width(cx);
+            first = cx * _size * _h + cy * _size + height(cy) - 1;
+            other = cx * _size * _h + ny * _size;
+            step = _h;
+        }
+        int count = 0;
+        int run = -1;
+        for (int i = 0; i <= len; i++) {
+            boolean open = i < len && isOpen(first + i * step) && isOpen(other + i * step);
+            if (open && run < 0) run = i;
+            if (open || run < 0) continue;
+            int end = i - 1;
+            if (end - run + 1 >= LONG_ENTRANCE) {
+                _transitions[count++] = first + run * step;
+                _transitions[count++] = other + run * step;
+                _transitions[count++] = first + end * step;
+                _transitions[count++] = other + end * step;
+            } else {
+                int mid = (run + end) / 2;
+                _transitions[count++] = first + mid * step;
+                _transitions[count++] = other + mid * step;
+            }
+            run = -1;
+        }
+        return Arrays.copyOf(_transitions, count);
+    }
+
+    /** @return the local index of a node cell in cluster k. */
+    private int nodeIndex(int k, int cell) {
+        int[] nodes = _nodes[k];
+        for (int j = 0; j < nodes.length; j++) {
+            if (nodes[j] == cell) return j;
+        }
+        throw new IllegalStateException("Cell " + cell + " is not a node of cluster " + k);
+    }
+
+    private int clusterOf(int cell) {
+        int x = cell / _h;
+        return (x / _size) * _ch + (cell - x * _h) / _size;
+    }
+
+    /** @return the local index of cell inside its cluster k. */
+    private int localOf(int k, int cell) {
+        int cx = k / _ch, cy = k - cx * _ch;
+        int x = cell / _h, y = cell - x * _h;
+        return (x - cx * _size) * height(cy) + (y - cy * _size);
+    }
+
+    private int width(int cx) {
+        return Math.min(_size, _w - cx * _size);
+    }
+
+    private int height(int cy) {
+        return Math.min(_size, _h - cy * _size);
+    }
+
+    /** @return the cluster to the right of k (wrapping if cyclic), or -1 if none or k itself. */
+    private int right(int k) {
+        int cx = k / _ch;
+        if (cx + 1 < _cw) return k + _ch;
+        return (_cyclic && _cw > 1) ? k - cx * _ch : -1;
+    }
+
+    private int left(int k) {
+        int cx = k / _ch;
+        if (cx > 0) return k - _ch;
+        return (_cyclic && _cw > 1) ? k + (_cw - 1) * _ch : -1;
+    }
+
+    private int down(int k) {
+        int cy = k % _ch;
+        if (cy + 1 < _ch) return k + 1;
+        return (_cyclic && _ch > 1) ? k - cy : -1;
+    }
+
+    private int up(int k) {
+        int cy = k % _ch;
+        if (cy > 0) return k - 1;
+        return (_cyclic && _ch > 1) ? k + _ch - 1 : -1;
+    }
+
+    private int heuristic(int cell, int tx, int ty) {
+        int x = cell / _h;
+        return PathSearch.heuristic(x, cell - x * _h, tx, ty, _w, _h, _cyclic);
+    }
+
+    private boolean isOpen(int i) {
+        return (_open[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static long key(int priority, int node) {
+        return ((long) priority << 32) | node;
+    }
+
+    /** @return the flat index of p. */
+    private int requireCell(Pixel2D p) {
+        if (p == null) throw new RuntimeException("Pixel2D is null");
+        if (p.getX() < 0 || p.getX() >= _w || p.getY() < 0 || p.getY() >= _h) {
+            throw new RuntimeException("Pixel out of bounds: " + p);
+        }
+        return _map.index(p.getX(), p.getY());
+    }
+}
@@ -0,0 +1,110 @@
+package assignments.Ex3.utils;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit 5 Testing class for HierarchicalPathfinder.
+ * Paths are checked for validity and compared with the exact BFS of Map.shortestPath.
+ */
+public class HierarchicalPathfinderTest {
+
+    /**
+     * Test 1: Random maps
+     * A path exists iff BFS finds one, every path is a valid walk of length distance(),
+     * never shorter than the BFS path, and nextStep is its second cell.
+     */
+    @Test
+    void testPathsAreValid() {
+        Random rnd = new Random(6);
+        long hpa = 0, exact = 0;
+        for (int round = 0; round < 40; round++) {
+            int w = 2 + rnd.nextInt(60), h = 2 + rnd.nextInt(60);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.25));
+            map.setCyclic(round % 2 == 0);
+            HierarchicalPathfinder finder = new HierarchicalPathfinder(map, 1, 2 + rnd.nextInt(12));
+            for (int q = 0; q < 30; q++) {
+                Pixel2D a = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Pixel2D b = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Pixel2D[] expected = map.shortestPath(a, b, 1);
+                Pixel2D[] path = finder.shortestPath(a, b);
+                if (expected == null) {
+                    assertNull(path, a + " -> " + b);
+                    assertEquals(-1, finder.distance(a, b));
+                    assertNull(finder.nextStep(a, b));
+                    continue;
+                }
+                assertValidPath(map, a, b, path);
+                assertTrue(path.length >= expected.length);
+                assertEquals(path.length - 1, finder.distance(a, b));
+                assertEquals(path.length > 1 ? path[1] : a, finder.nextStep(a, b));
+                hpa += path.length;
+                exact += expected.length;
+            }
+        }
+        assertTrue(hpa < exact * 1.2, "paths are " + hpa + " steps, shortest " + exact);
+    }
+
+    /**
+     * Test 2: Local rebuild
+     * Changing a wall inside a cluster rebuilds that cluster only, on a border both clusters,
+     * and a non-wall change nothing. Paths follow the new walls.
+     */
+    @Test
+    void testCellChangeRebuildsCluster() {
+        Map map = new Map(64, 64, 0);
+        map.setCyclic(false);
+        HierarchicalPathfinder finder = new HierarchicalPathfinder(map, 1, 16);
+        assertEquals(16, finder.getClusterCount());
+        assertEquals(16, finder.getLastRebuildCount());
+
+        finder.setPixel(5, 5, 1);
+        assertEquals(1, finder.getLastRebuildCount());
+        finder.setPixel(15, 5, 1);
+        assertEquals(2, finder.getLastRebuildCount());
+        finder.setPixel(20, 20, 4);
+        assertEquals(0, finder.getLastRebuildCount());
+
+        // Wall off column 31 except one gap; the path must go through it.
+        for (int y = 0; y < 64; y++) {
+            if (y != 40) finder.setPixel(31, y, 1);
+        }
+        Pixel2D a = new Index2D(10, 2), b = new Index2D(50, 2);
+        Pixel2D[] path = finder.shortestPath(a, b);
+        assertValidPath(map, a, b, path);
+        assertEquals(map.shortestPath(a, b, 1).length, path.length);
+        finder.setPixel(31, 40, 1);
+        assertNull(finder.shortestPath(a, b));
+        assertEquals(-1, finder.distance(a, b));
+    }
+
+    /**
+     * Test 3: Argument checks
+     */
+    @Test
+    void testInvalidArguments() {
+        Map map = new Map(10, 10, 0);
+        map.setPixel(3, 3, 1);
+        assertThrows(RuntimeException.class, () -> new HierarchicalPathfinder(null, 1));
+        assertThrows(RuntimeException.class, () -> new HierarchicalPathfinder(map, 1, 1));
+        HierarchicalPathfinder finder = new HierarchicalPathfinder(map, 1);
+        assertEquals(1, finder.getClusterCount());
+        assertThrows(RuntimeException.class, () -> finder.shortestPath(new Index2D(10, 0), new Index2D(0, 0)));
+        assertThrows(RuntimeException.class, () -> finder.nextStep(null, new Index2D(0, 0)));
+        assertThrows(RuntimeException.class, () -> finder.cellChanged(0, -1));
+        assertNull(finder.shortestPath(new Index2D(3, 3), new Index2D(0, 0)));
+        assertEquals(1, finder.shortestPath(new Index2D(4, 4), new Index2D(4, 4)).length);
+    }
+
+    private static void assertValidPath(Map map, Pixel2D a, Pixel2D b, Pixel2D[] path) {
+        assertNotNull(path, a + " -> " + b);
+        assertEquals(a, path[0]);
+        assertEquals(b, path[path.length - 1]);
+        for (int i = 0; i < path.length; i++) {
+            assertNotEquals(1, map.getPixel(path[i]), "wall on the path at " + path[i]);
+            if (i > 0) assertEquals(2, map.shortestPath(path[i - 1], path[i], 1).length, "not a step: " + path[i - 1] + " " + path[i]);
+        }
+    }
+}
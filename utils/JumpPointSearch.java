@@ -0,0 +1,204 @@
+package assignments.Ex3.utils;
+
+/**
+ * Jump Point Search (JPS) for 4-connected grids, including cyclic borders.
+ *
+ * Many shortest paths on an open grid differ only in the order of their horizontal and vertical
+ * moves. JPS searches only one "canonical" representative of each such family:
+ * horizontal moves come first, and a vertical move may be followed by a horizontal one only
+ * when it is forced - i.e. when the cell beside the previous cell (on that side) is blocked,
+ * so the turn could not have been taken earlier. Any shortest path can be rewritten into a
+ * canonical one of the same length by swapping (vertical, horizontal) pairs around open corners.
+ *
+ * The search runs A* (wrap-aware Manhattan heuristic) over "jump points" only:
+ * 1. A vertical jump scans straight on until it hits a wall, the goal, or a cell with a forced
+ *    horizontal turn.
+ * 2. A horizontal jump scans straight on until it hits a wall or the goal, or until a vertical
+ *    jump from the current cell finds a jump point.
+ * The cells in between are never pushed to the heap, so open areas expand very few nodes.
+ * A cell may be expanded once per arrival direction (at its best cost), since the allowed
+ * successors depend on the direction of arrival.
+ */
+final class JumpPointSearch {
+    private static final int UP = 0, LEFT = 1, DOWN = 2, RIGHT = 3;
+
+    private final Map _m;
+    private final int _obs, _w, _h, _dst, _tx, _ty;
+    private final boolean _cyclic;
+    /** Number of steps taken by the last successful jump. */
+    private int _steps;
+
+    private JumpPointSearch(Map m, int dst, int obsColor) {
+        _m = m;
+        _obs = obsColor;
+        _w = m.getWidth();
+        _h = m.getHeight();
+        _cyclic = m.isCyclic();
+        _dst = dst;
+        _tx = dst / _h;
+        _ty = dst - _tx * _h;
+    }
+
+    /**
+     * Computes a shortest path from src to dst with JPS.
+     *
+     * @param m the map
+     * @param src start index
+     * @param dst target index (different from src, both walkable)
+     * @param obsColor obstacle value
+     * @param ws a workspace started for this map
+     * @return the shortest path, or null if dst is unreachable
+     */
+    static Pixel2D[] search(Map m, int src, int dst, int obsColor, SearchWorkspace ws) {
+        return new JumpPointSearch(m, dst, obsColor).run(src, ws);
+    }
+
+    private Pixel2D[] run(int src, SearchWorkspace ws) {
+        // Per cell: g = best cost so far; parent = the jump point it was reached from;
+        // aux = (arrival direction of that parent link << 4) | (arrival directions queued at cost g).
+        int[] g = ws.dist(), parent = ws.parent, aux = ws.aux();
+        ws.mark(src);
+        g[src] = 0;
+        parent[src] = src;
+        aux[src] = 0;
+        int size = push(ws, 0, heuristic(src), 4, src);
+
+        while (size > 0) {
+            long top = ws.heap[0];
+            size = PathSearch.pop(ws.heap, size);
+            int cur = (int) (top & 0x7FFFFFFFL);
+            int dir = (int) ((top >>> 31) & 7);
+            if (g[cur] + heuristic(cur) != (int) (top >>> 34)) continue; // Stale entry.
+            if (cur == _dst) return buildPath(src, g, parent, aux);
+            ws.expanded++;
+
+            int x = cur / _h, y = cur - x * _h;
+            for (int d = 0; d < 4; d++) {
+                if (!isSuccessor(cur, x, y, dir, d)) continue;
+                int next = (d == LEFT || d == RIGHT) ? jumpHorizontal(cur, x, y, d) : jumpVertical(cur, x, y, d);
+                if (next < 0) continue;
+                int ng = g[cur] + _steps;
+                if (!ws.isMarked(next) || ng < g[next]) {
+                    ws.mark(next);
+                    g[next] = ng;
+                    aux[next] = 0;
+                } else if (ng > g[next] || (aux[next] & (1 << d)) != 0) {
+                    continue;
+                }
+                if ((aux[next] & 15) == 0) { // First arrival at this cost decides the parent link.
+                    parent[next] = cur;
+                    aux[next] = d << 4;
+                }
+                aux[next] |= 1 << d;
+                size = push(ws, size, ng + heuristic(next), d, next);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param dir the arrival direction at cur (4 for the start cell)
+     * @param d a candidate direction
+     * @return true iff moving on in direction d from cur is allowed by the canonical ordering
+     */
+    private boolean isSuccessor(int cur, int x, int y, int dir, int d) {
+        if (dir == 4) return true;
+        if (d == ((dir + 2) & 3)) return false; // Never turn back.
+        if (dir == LEFT || dir == RIGHT) return true; // After a horizontal move everything is natural.
+        if (d == dir) return true;
+        // Arrived vertically: a horizontal turn must be forced by a wall beside the previous cell.
+        int prev = _m.neighbor(cur, x, y, (dir + 2) & 3);
+        int py = stepY(y, (dir + 2) & 3);
+        int side = _m.neighbor(prev, x, py, d);
+        return side < 0 || _m.cell(side) == _obs;
+    }
+
+    /**
+     * Scans vertically from (x,y) in direction d.
+     *
+     * @return the first jump point (goal or a cell with a forced horizontal turn), or -1.
+     * The number of steps is left in _steps.
+     */
+    private int jumpVertical(int cur, int x, int y, int d) {
+        for (int step = 1; step < _h; step++) { // A shortest path never runs a full lap.
+            int next = _m.neighbor(cur, x, y, d);
+            if (next < 0 || _m.cell(next) == _obs) return -1;
+            int prev = cur;
+            int py = y;
+            cur = next;
+            y = stepY(y, d);
+            if (cur == _dst || isForced(cur, x, y, prev, py, LEFT) || isForced(cur, x, y, prev, py, RIGHT)) {
+                _steps = step;
+                return cur;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scans horizontally from (x,y) in direction d.
+     *
+     * @return the first jump point (goal, or a cell from which a vertical jump succeeds), or -1.
+     * The number of steps is left in _steps.
+     */
+    private int jumpHorizontal(int cur, int x, int y, int d) {
+        for (int step = 1; step < _w; step++) {
+            int next = _m.neighbor(cur, x, y, d);
+            if (next < 0 || _m.cell(next) == _obs) return -1;
+            cur = next;
+            x = (d == LEFT) ? ((x == 0) ? _w - 1 : x - 1) : ((x == _w - 1) ? 0 : x + 1);
+            if (cur == _dst || jumpVertical(cur, x, y, UP) >= 0 || jumpVertical(cur, x, y, DOWN) >= 0) {
+                _steps = step;
+                return cur;
+            }
+        }
+        return -1;
+    }
+
+    /** @return true iff the side neighbor of cur is open while the same side of prev is blocked. */
+    private boolean isForced(int cur, int x, int y, int prev, int py, int side) {
+        int open = _m.neighbor(cur, x, y, side);
+        if (open < 0 || _m.cell(open) == _obs) return false;
+        int behind = _m.neighbor(prev, x, py, side);
+        return behind < 0 || _m.cell(behind) == _obs;
+    }
+
+    private int stepY(int y, int d) {
+        if (d == UP) return (y == 0) ? _h - 1 : y - 1;
+        return (y == _h - 1) ? 0 : y + 1;
+    }
+
+    /** @return the wrap-aware Manhattan distance from cell i to the goal. */
+    private int heuristic(int i) {
+        int x = i / _h, y = i - x * _h;
+        int dx = Math.abs(x - _tx), dy = Math.abs(y - _ty);
+        if (_cyclic) {
+            dx = Math.min(dx, _w - dx);
+            dy = Math.min(dy, _h - dy);
+        }
+        return dx + dy;
+    }
+
+    /** Pushes (f, arrival direction, cell) into the workspace heap; returns the new size. */
+    private static int push(SearchWorkspace ws, int size, int f, int dir, int cell) {
+        return PathSearch.push(ws, size, ((long) f << 34) | ((long) dir << 31) | cell);
+    }
+
+    /** Walks the parent links back from the goal, filling in the straight runs between jump points. */
+    private Pixel2D[] buildPath(int src, int[] g, int[] parent, int[] aux) {
+        Pixel2D[] path = new Pixel2D[g[_dst] + 1];
+        int i = path.length - 1;
+        int cur = _dst;
+        path[i] = _m.pixelAt(cur);
+        while (cur != src) {
+            int back = ((aux[cur] >>> 4) + 2) & 3;
+            int steps = g[cur] - g[parent[cur]];
+            for (int k = 0; k < steps; k++) {
+                int x = cur / _h;
+                cur = _m.neighbor(cur, x, cur - x * _h, back);
+                path[--i] = _m.pixelAt(cur);
+            }
+        }
+        return path;
+    }
+}
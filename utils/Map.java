@@ -1,18 +1,68 @@
 package assignments.Ex3.utils;
 
-import java.util.ArrayList;
-import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Represents a 2D integer map.
  * Provides basic pixel access and BFS-based algorithms:
  * flood-fill, shortest path and all-distances.
+ * The cells are stored in a single flat array (column by column, i.e. index = x*height + y),
+ * and the BFS loops work on int indices only - no per-cell objects are created while searching.
+ * A {@link #fork()} shares that array and copies only the tiles it writes to.
  * @author maayan.cohen
  *
  */
 public class Map implements Map2D {
-    private int[][] _map;
+    /** Neighbor order used by all the searches: up (y-1), left (x-1), down (y+1), right (x+1). */
+    static final int[] DX = {0, -1, 0, 1};
+    static final int[] DY = {-1, 0, 1, 0};
+
+    private int[] _data;
+    /**
+     * Per tile of {@link #TILE_SIZE} cells: the private copy of this map, or null while the tile
+     * is read from {@code _data}. The whole table is null unless {@code _data} is shared with a fork.
+     */
+    private int[][] _tiles = null;
+    /** Bit k is set iff _tiles[k] was copied by this map and is not shared with a fork. */
+    private long[] _ownedTiles = null;
+    private int _w, _h;
     private boolean _cyclicFlag = true;
+    private PathStrategy _pathStrategy = PathStrategy.BFS;
+    private int _lastExpanded = 0;
+    /** The component index of this map, kept up to date by the mutators (see {@link #components}). */
+    private ComponentIndex _components = null;
+    /** The neighbor table of this map, kept up to date by the mutators (see {@link #neighborTable}). */
+    private NeighborTable _neighbors = null;
+    /** The obstacle value whose layer version is tracked, and that version (0 = none, see {@link #layerVersion}). */
+    private int _layerObs;
+    private long _layerVersion = 0;
+    /** Layer versions are drawn from one counter, so no two layouts of any maps share one. */
+    private static final AtomicLong LAYER_VERSIONS = new AtomicLong();
+
+    /**
+     * Maps with at least this many cells fill over a bit-packed {@link WalkableMask}
+     * (on par with the scanline fill on open maps, 2-3x faster once walls break the spans).
+     */
+    static final int BIT_FILL_MIN_CELLS = 1 << 12;
+    /**
+     * Maps with at least this many cells compute the unlabeled distance fields of
+     * {@link #allDistance} over a {@link WalkableMask}. A diagonal BFS wavefront sets only
+     * a bit or two per word, so this pays off on large maps only (about 1.1-1.4x at 1000x1000).
+     */
+    static final int BIT_DISTANCE_MIN_CELLS = 1 << 19;
+    /**
+     * Maps with at least this many cells compute the unlabeled distance fields of
+     * {@link #allDistance} with the level-parallel BFS of {@link ParallelBfs} on the common
+     * ForkJoinPool, when it has more than one thread.
+     */
+    static final int PARALLEL_DISTANCE_MIN_CELLS = 1 << 20;
+    /** Forks copy the shared cells in tiles of this many consecutive flat indices. */
+    static final int TILE_SIZE = 1 << 6;
+    private static final int TILE_BITS = 6;
 
     /**
      * Constructs a w*h raster map initialized with value v.
@@ -43,6 +93,59 @@ public class Map implements Map2D {
         init(data);
     }
 
+    /**
+     * Constructs a copy of another map: its cells (one flat array copy), cyclic flag and path strategy.
+     *
+     * @param other the map to copy
+     * @throws RuntimeException if other is null or not initialized
+     */
+    public Map(Map other) {
+        if (other == null) throw new RuntimeException("Map is null");
+        other.checkMapInitialized();
+        _w = other._w;
+        _h = other._h;
+        _data = other.flatCopy();
+        _cyclicFlag = other._cyclicFlag;
+        _pathStrategy = other._pathStrategy;
+        _layerObs = other._layerObs;
+        _layerVersion = other._layerVersion;
+    }
+
+    /** A fork: shares data (never written while shared) and starts from the given tile table. */
+    private Map(Map other, int[][] tiles) {
+        _w = other._w;
+        _h = other._h;
+        _data = other._data;
+        _tiles = tiles;
+        _ownedTiles = new long[(tiles.length + 63) >>> 6];
+        _cyclicFlag = other._cyclicFlag;
+        _pathStrategy = other._pathStrategy;
+        _layerObs = other._layerObs;
+        _layerVersion = other._layerVersion;
+    }
+
+    /**
+     * Returns a copy-on-write copy of this map: its cells and cyclic flag, sharing the cell storage.
+     * The two maps change independently afterwards; the first write to a tile of
+     * {@link #TILE_SIZE} cells (in either map) copies that tile only. So an overlay such as
+     * "the board plus virtual walls" costs one reference per tile and the written tiles,
+     * instead of a copy of every cell.
+     * Bulk writes ({@link #fill}, {@link #replace}) copy the whole storage first.
+     *
+     * @return the fork
+     * @throws RuntimeException if map not initialized
+     */
+    public Map fork() {
+        checkMapInitialized();
+        if (_tiles == null) {
+            _tiles = new int[((_data.length - 1) >>> TILE_BITS) + 1][];
+            _ownedTiles = new long[(_tiles.length + 63) >>> 6];
+        } else {
+            Arrays.fill(_ownedTiles, 0); // The copied tiles are shared with the fork from now on.
+        }
+        return new Map(this, _tiles.clone());
+    }
+
     /**
      * Reinitializes the map to be w*h filled with v.
      *
@@ -54,12 +157,14 @@ public class Map implements Map2D {
     @Override
     public void init(int w, int h, int v) {
         if (w <= 0 || h <= 0) throw new RuntimeException("Width and height must be positive");
-        _map = new int[w][h];
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                _map[x][y] = v;
-            }
-        }
+        if ((long) w * h > Integer.MAX_VALUE) throw new RuntimeException("Map is too large: " + w + "x" + h);
+        _w = w;
+        _h = h;
+        _data = new int[w * h];
+        _tiles = null;
+        _ownedTiles = null;
+        if (v != 0) Arrays.fill(_data, v);
+        invalidateIndexes();
     }
 
     /**
@@ -81,12 +186,16 @@ public class Map implements Map2D {
                 throw new RuntimeException("Array must be rectangular (same length for all rows)");
             }
         }
-        _map = new int[w][h];
+        if ((long) w * h > Integer.MAX_VALUE) throw new RuntimeException("Map is too large: " + w + "x" + h);
+        _w = w;
+        _h = h;
+        _data = new int[w * h];
+        _tiles = null;
+        _ownedTiles = null;
         for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                _map[x][y] = arr[x][y];
-            }
+            System.arraycopy(arr[x], 0, _data, x * h, h);
         }
+        invalidateIndexes();
     }
 
     /**
@@ -96,16 +205,50 @@ public class Map implements Map2D {
     @Override
     public int[][] getMap() {
         checkMapInitialized();
-        int w = getWidth(), h = getHeight();
-        int[][] ans = new int[w][h];
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                ans[x][y] = _map[x][y];
-            }
+        int[] data = (_tiles == null) ? _data : flatCopy();
+        int[][] ans = new int[_w][_h];
+        for (int x = 0; x < _w; x++) {
+            System.arraycopy(data, x * _h, ans[x], 0, _h);
         }
         return ans;
     }
 
+    /**
+     * Counts the cells holding a value, in one branch-free sweep (see {@link BulkOps}).
+     *
+     * @param v the value
+     * @return the number of cells equal to v
+     * @throws RuntimeException if map not initialized
+     */
+    public int count(int v) {
+        checkMapInitialized();
+        int n = _data.length;
+        if (_tiles == null) return BulkOps.count(_data, 0, n, v);
+        int ans = 0;
+        for (int k = 0; k < _tiles.length; k++) {
+            int from = k << TILE_BITS, to = Math.min(n, from + TILE_SIZE);
+            int[] t = _tiles[k];
+            ans += (t == null) ? BulkOps.count(_data, from, to, v) : BulkOps.count(t, 0, to - from, v);
+        }
+        return ans;
+    }
+
+    /**
+     * Replaces every cell holding oldV with newV, in one branch-free sweep (see {@link BulkOps}).
+     *
+     * @param oldV the value to replace
+     * @param newV the new value
+     * @return the number of replaced cells
+     * @throws RuntimeException if map not initialized
+     */
+    public int replace(int oldV, int newV) {
+        checkMapInitialized();
+        if (oldV == newV) return 0;
+        invalidateIndexes();
+        ownData();
+        return BulkOps.replace(_data, 0, _data.length, oldV, newV);
+    }
+
     /**
      * @return the map width (x dimension).
      * @throws RuntimeException if map not initialized
@@ -113,7 +256,7 @@ public class Map implements Map2D {
     @Override
     public int getWidth() {
         checkMapInitialized();
-        return _map.length;
+        return _w;
     }
 
     /**
@@ -123,8 +266,7 @@ public class Map implements Map2D {
     @Override
     public int getHeight() {
         checkMapInitialized();
-        if (_map.length == 0) throw new RuntimeException("Map width 0");
-        return _map[0].length;
+        return _h;
     }
 
     /**
@@ -139,7 +281,7 @@ public class Map implements Map2D {
     public int getPixel(int x, int y) {
         checkMapInitialized();
         if (!isInsideXY(x, y)) throw new RuntimeException("Pixel (" + x + "," + y + ") is out of bounds");
-        return _map[x][y];
+        return cell(x * _h + y);
     }
 
     /**
@@ -156,6 +298,17 @@ public class Map implements Map2D {
         return getPixel(p.getX(), p.getY());
     }
 
+    /**
+     * Returns the value stored at a packed coordinate (see {@link Index2D#pack(int, int)}).
+     *
+     * @param xy packed coordinate
+     * @return value at xy
+     * @throws RuntimeException if map not initialized or out of bounds
+     */
+    public int getPixel(long xy) {
+        return getPixel(Index2D.unpackX(xy), Index2D.unpackY(xy));
+    }
+
     /**
      * Sets the value stored at (x,y).
      *
@@ -168,7 +321,10 @@ public class Map implements Map2D {
     public void setPixel(int x, int y, int v) {
         checkMapInitialized();
         if (!isInsideXY(x, y)) throw new RuntimeException("Pixel (" + x + "," + y + ") is out of bounds");
-        _map[x][y] = v;
+        int i = x * _h + y;
+        int old = cell(i);
+        setCell(i, v);
+        onCellChanged(i, old, v);
     }
 
     /**
@@ -186,9 +342,22 @@ public class Map implements Map2D {
     }
 
     /**
-     * Flood-fill (BFS) starting from {@code xy}.
+     * Sets the value stored at a packed coordinate (see {@link Index2D#pack(int, int)}).
+     *
+     * @param xy packed coordinate
+     * @param v new value
+     * @throws RuntimeException if map not initialized or out of bounds
+     */
+    public void setPixel(long xy, int v) {
+        setPixel(Index2D.unpackX(xy), Index2D.unpackY(xy), v);
+    }
+
+    /**
+     * Flood-fill starting from {@code xy}.
      * Replaces all 4-connected cells having the same value as {@code xy}
      * with {@code new_v}. Cyclic wrapping is respected if enabled.
+     * Small maps use a scanline fill over whole column spans; large maps find the region
+     * with the bit-packed search of {@link WalkableMask}.
      *
      * @param xy start pixel
      * @param new_v new value to assign
@@ -199,34 +368,22 @@ public class Map implements Map2D {
         requirePixel(xy);
         if (!isInside(xy)) return 0;
 
-        int old_v = getPixel(xy);
+        int start = index(xy.getX(), xy.getY());
+        int old_v = cell(start);
         if (old_v == new_v) return 0;
 
-        int w = getWidth(), h = getHeight();
-        boolean[][] visited = new boolean[w][h];
-
-        ArrayDeque<Pixel2D> q = new ArrayDeque<>();
-        q.addLast(new Index2D(xy));
-        visited[xy.getX()][xy.getY()] = true;
-
-        int count = 0;
-
-        while (!q.isEmpty()) {
-            Pixel2D p = q.removeFirst();
-            if (getPixel(p) != old_v) continue;
-
-            setPixel(p, new_v);
-            count++;
-
-            for (Pixel2D nb : neighbors4(p)) {
-                enqueueIfMatch(nb, old_v, visited, q);
-            }
+        invalidateIndexes();
+        ownData();
+        if (_w * _h >= BIT_FILL_MIN_CELLS) {
+            WalkableMask region = WalkableMask.ofColor(this, old_v).reachableFrom(xy);
+            return paint(region, new_v);
         }
-        return count;
+        return scanlineFill(start, old_v, new_v);
     }
 
     /**
-     * Computes the shortest path from {@code p1} to {@code p2} using BFS (4-neighbors).
+     * Computes the shortest path from {@code p1} to {@code p2} (4-neighbors), using the
+     * search strategy of this map (see {@link #setPathStrategy(PathStrategy)}, BFS by default).
      * Cells with value {@code obsColor} are treated as obstacles.
      * Cyclic wrapping is respected if enabled.
      *
@@ -237,39 +394,351 @@ public class Map implements Map2D {
      */
     @Override
     public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor) {
+        return shortestPath(p1, p2, obsColor, _pathStrategy);
+    }
+
+    /**
+     * Computes the shortest path from {@code p1} to {@code p2} with the given search strategy.
+     * All the strategies return a path of the same (shortest) length; the path itself may differ
+     * when there are several shortest paths.
+     *
+     * @param p1 start pixel
+     * @param p2 target pixel
+     * @param obsColor obstacle value
+     * @param strategy the search algorithm to use
+     * @return shortest path including p1 and p2, or null if unreachable
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, PathStrategy strategy) {
         requirePixel(p1);
         requirePixel(p2);
+        if (strategy == null) throw new RuntimeException("Path strategy is null");
 
+        _lastExpanded = 0;
         if (!isWalkable(p1, obsColor) || !isWalkable(p2, obsColor)) return null;
         if (p1.equals(p2)) return new Pixel2D[]{ new Index2D(p1) };
 
-        int w = getWidth(), h = getHeight();
-        boolean[][] visited = new boolean[w][h];
-        Pixel2D[][] parent = new Pixel2D[w][h];
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
 
-        ArrayDeque<Pixel2D> q = new ArrayDeque<>();
-        q.addLast(new Index2D(p1));
-        visited[p1.getX()][p1.getY()] = true;
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            switch (strategy) {
+                case A_STAR: return PathSearch.aStar(this, src, dst, obsColor, ws);
+                case BIDIRECTIONAL: return PathSearch.bidirectional(this, src, dst, obsColor, ws);
+                case JUMP_POINT: return JumpPointSearch.search(this, src, dst, obsColor, ws);
+                default: return bfsPath(src, dst, obsColor, ws);
+            }
+        } finally {
+            _lastExpanded = ws.expanded;
+            ws.release();
+        }
+    }
 
-        while (!q.isEmpty()) {
-            Pixel2D cur = q.removeFirst();
+    /**
+     * Same as {@link #shortestPath(Pixel2D, Pixel2D, int)}, returned as a {@link CompactPath}
+     * (the start cell plus a byte per step).
+     * With the BFS strategy the search runs from p2 back to p1, so the parent chain already
+     * leads from p1 to p2 and the steps are written in order, without a Pixel2D per cell;
+     * the other strategies encode the path they find.
+     *
+     * @param p1 start pixel
+     * @param p2 target pixel
+     * @param obsColor obstacle value
+     * @return the shortest path from p1 to p2, or null if unreachable
+     */
+    public CompactPath compactPath(Pixel2D p1, Pixel2D p2, int obsColor) {
+        requirePixel(p1);
+        requirePixel(p2);
+        if (_pathStrategy != PathStrategy.BFS) {
+            Pixel2D[] path = shortestPath(p1, p2, obsColor, _pathStrategy);
+            return (path == null) ? null : CompactPath.of(path, _w, _h);
+        }
+
+        _lastExpanded = 0;
+        if (!isWalkable(p1, obsColor) || !isWalkable(p2, obsColor)) return null;
+        int src = index(p1.getX(), p1.getY());
+        int dst = index(p2.getX(), p2.getY());
+        if (src == dst) return new CompactPath(_w, _h, p1.getX(), p1.getY(), new byte[0]);
+
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            if (!bfsSearch(dst, src, obsColor, ws)) return null;
+            int[] parent = ws.parent;
+            int len = 0;
+            for (int cur = src; cur != dst; cur = parent[cur]) len++;
+            byte[] steps = new byte[len];
+            int cur = src;
+            for (int k = 0; k < len; k++) {
+                int next = parent[cur], x = cur / _h, y = cur - x * _h;
+                int d = 0;
+                while (neighbor(cur, x, y, d) != next) d++;
+                steps[k] = (byte) d;
+                cur = next;
+            }
+            return new CompactPath(_w, _h, p1.getX(), p1.getY(), steps);
+        } finally {
+            _lastExpanded = ws.expanded;
+            ws.release();
+        }
+    }
+
+    /**
+     * Sets the search strategy used by {@link #shortestPath(Pixel2D, Pixel2D, int)}.
+     *
+     * @param strategy the strategy (not null)
+     */
+    public void setPathStrategy(PathStrategy strategy) {
+        if (strategy == null) throw new RuntimeException("Path strategy is null");
+        _pathStrategy = strategy;
+    }
+
+    /**
+     * @return the search strategy used by {@link #shortestPath(Pixel2D, Pixel2D, int)}.
+     */
+    public PathStrategy getPathStrategy() {
+        return _pathStrategy;
+    }
+
+    /**
+     * @return the number of cells expanded by the last shortestPath call on this map (for benchmarks).
+     */
+    public int getLastExpandedCount() {
+        return _lastExpanded;
+    }
 
-            for (Pixel2D nb : neighbors4(cur)) {
-                if (!isWalkable(nb, obsColor)) continue;
+    /**
+     * Finds the closest cell (BFS distance from {@code start}) whose value matches {@code isTarget},
+     * using a single BFS that stops at the first matching BFS level.
+     * Ties are broken by the smaller (x,y) - x first, then y.
+     *
+     * @param start start pixel
+     * @param isTarget predicate over the cell value
+     * @param obsColor obstacle value
+     * @return the path from start to the chosen cell (inclusive), or null if no target is reachable
+     */
+    public Pixel2D[] nearestPath(Pixel2D start, IntPredicate isTarget, int obsColor) {
+        return nearestPath(start, isTarget, null, 0, obsColor);
+    }
 
-                int x = nb.getX(), y = nb.getY();
-                if (visited[x][y]) continue;
+    /**
+     * Same as {@link #nearestPath(Pixel2D, IntPredicate, int)} for a fixed set of target values.
+     *
+     * @param start start pixel
+     * @param targetValues the values which count as targets
+     * @param obsColor obstacle value
+     * @return the path from start to the chosen cell (inclusive), or null if no target is reachable
+     */
+    public Pixel2D[] nearestPath(Pixel2D start, int[] targetValues, int obsColor) {
+        if (targetValues == null) throw new RuntimeException("Target values array is null");
+        int[] values = targetValues.clone();
+        Arrays.sort(values);
+        return nearestPath(start, v -> Arrays.binarySearch(values, v) >= 0, obsColor);
+    }
 
-                visited[x][y] = true;
-                parent[x][y] = cur;
+    /**
+     * Finds the best target cell reachable from {@code start} in a single BFS.
+     * The score of a target is its BFS distance minus {@code bonus} of its value (lower is better),
+     * so a far but valuable target can beat a close one. The search stops as soon as no
+     * deeper cell can beat the best score found so far.
+     * Ties are broken by the smaller (x,y) - x first, then y.
+     *
+     * @param start start pixel
+     * @param isTarget predicate over the cell value
+     * @param bonus the score bonus of a target value (may be null - no bonus)
+     * @param maxBonus an upper bound of {@code bonus} over all the values (used to stop early)
+     * @param obsColor obstacle value
+     * @return the path from start to the chosen cell (inclusive), or null if no target is reachable
+     */
+    public Pixel2D[] nearestPath(Pixel2D start, IntPredicate isTarget, IntUnaryOperator bonus,
+                                 int maxBonus, int obsColor) {
+        requirePixel(start);
+        if (isTarget == null) throw new RuntimeException("Target predicate is null");
+        if (!isWalkable(start, obsColor)) return null;
+        if (bonus == null) maxBonus = 0;
 
-                if (nb.equals(p2)) {
-                    return buildPath(p1, p2, parent);
+        int src = index(start.getX(), start.getY());
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int[] q = ws.queue, parent = ws.parent;
+            int head = 0, tail = 0;
+            q[tail++] = src;
+            ws.mark(src);
+
+            int best = -1;
+            long bestScore = Long.MAX_VALUE;
+            int depth = 0;
+            while (head < tail) {
+                // Every cell of this level scores at least depth - maxBonus.
+                if (best >= 0 && depth - (long) maxBonus > bestScore) break;
+                int levelEnd = tail;
+                while (head < levelEnd) {
+                    int cur = q[head++];
+                    int v = cell(cur);
+                    if (isTarget.test(v)) {
+                        long score = depth - (long) (bonus == null ? 0 : bonus.applyAsInt(v));
+                        if (score < bestScore || (score == bestScore && cur < best)) {
+                            bestScore = score;
+                            best = cur;
+                        }
+                    }
+                    int x = cur / _h, y = cur - x * _h;
+                    for (int d = 0; d < 4; d++) {
+                        int nb = neighbor(cur, x, y, d);
+                        if (nb < 0 || ws.isMarked(nb) || cell(nb) == obsColor) continue;
+                        ws.mark(nb);
+                        parent[nb] = cur;
+                        q[tail++] = nb;
+                    }
                 }
-                q.addLast(new Index2D(nb));
+                depth++;
             }
+            return best < 0 ? null : buildPath(src, best, parent);
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Depth-limited {@link #allDistance(Pixel2D, int)}: a BFS from {@code start} that stops
+     * expanding at distance maxDepth, with a sparse result, so the work and the memory of the
+     * result are proportional to the explored ball rather than to the map.
+     *
+     * @param start start pixel
+     * @param obsColor obstacle value
+     * @param maxDepth the largest distance to explore (non-negative)
+     * @return the cells within maxDepth of start and their distances (empty if start is
+     * outside the map or an obstacle)
+     * @throws RuntimeException if map not initialized, start is null or maxDepth is negative
+     */
+    public SparseDistances allDistance(Pixel2D start, int obsColor, int maxDepth) {
+        requirePixel(start);
+        if (maxDepth < 0) throw new RuntimeException("Depth limit must not be negative: " + maxDepth);
+        if (!isWalkable(start, obsColor)) return new SparseDistances(_h, maxDepth, new int[0], new int[0], 0);
+
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int[] dist = ws.dist(), q = ws.queue, cellDist = ws.aux();
+            Traversal.search(this, new int[]{index(start.getX(), start.getY())}, 1, obsColor, null, null,
+                    -1, maxDepth, dist, ws);
+            for (int k = 0; k < ws.queued; k++) cellDist[k] = dist[q[k]];
+            return new SparseDistances(_h, maxDepth, q, cellDist, ws.queued);
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Radius-limited reachability: the distance from p1 to p2 if it is at most maxDepth.
+     * The BFS from p1 stops at p2 or at distance maxDepth, whichever comes first.
+     *
+     * @param p1 start pixel
+     * @param p2 target pixel
+     * @param obsColor obstacle value
+     * @param maxDepth the largest distance to explore (non-negative)
+     * @return the distance from p1 to p2, or -1 if it is larger than maxDepth, or either pixel
+     * is outside the map or an obstacle
+     * @throws RuntimeException if map not initialized, a pixel is null or maxDepth is negative
+     */
+    public int distanceWithin(Pixel2D p1, Pixel2D p2, int obsColor, int maxDepth) {
+        requirePixel(p1);
+        requirePixel(p2);
+        if (maxDepth < 0) throw new RuntimeException("Depth limit must not be negative: " + maxDepth);
+        if (!isWalkable(p1, obsColor) || !isWalkable(p2, obsColor)) return -1;
+        int src = index(p1.getX(), p1.getY()), dst = index(p2.getX(), p2.getY());
+
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int[] dist = ws.dist();
+            int stop = Traversal.search(this, new int[]{src}, 1, obsColor, null, null, dst, maxDepth, dist, ws);
+            return (stop == dst) ? dist[dst] : -1;
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Computes the shortest distances from one source to many targets with a single BFS,
+     * which stops as soon as every reachable target is settled (instead of one search per target).
+     *
+     * @param source start pixel
+     * @param targets the target pixels (duplicates allowed)
+     * @param obsColor obstacle value
+     * @return ans[k] is the distance from source to targets[k], or -1 if it is unreachable,
+     * outside the map or an obstacle
+     */
+    public int[] shortestPaths(Pixel2D source, Pixel2D[] targets, int obsColor) {
+        return shortestPaths(source, targets, obsColor, null);
+    }
+
+    /**
+     * Same as {@link #shortestPaths(Pixel2D, Pixel2D[], int)}, also reporting the first move
+     * toward every target.
+     *
+     * @param source start pixel
+     * @param targets the target pixels (duplicates allowed)
+     * @param obsColor obstacle value
+     * @param firstSteps if not null (length at least targets.length), firstSteps[k] is set to the
+     * direction of the first move of a shortest path to targets[k] (0 = y-1, 1 = x-1, 2 = y+1,
+     * 3 = x+1, as in {@link CompactPath}), or -1 if the target is unreachable or the source itself
+     * @return the distances, as in {@link #shortestPaths(Pixel2D, Pixel2D[], int)}
+     */
+    public int[] shortestPaths(Pixel2D source, Pixel2D[] targets, int obsColor, int[] firstSteps) {
+        requirePixel(source);
+        if (targets == null) throw new RuntimeException("Targets array is null");
+        if (firstSteps != null && firstSteps.length < targets.length) {
+            throw new RuntimeException("firstSteps is shorter than targets");
+        }
+        int k = targets.length;
+        int[] ans = new int[k], cells = new int[k];
+        Arrays.fill(ans, -1);
+        if (firstSteps != null) Arrays.fill(firstSteps, 0, k, -1);
+        // The walkable targets, as sorted distinct flat indices.
+        int distinct = 0;
+        for (int j = 0; j < k; j++) {
+            requirePixel(targets[j]);
+            cells[j] = isWalkable(targets[j], obsColor) ? index(targets[j].getX(), targets[j].getY()) : -1;
+        }
+        int[] sorted = cells.clone();
+        Arrays.sort(sorted);
+        for (int c : sorted) {
+            if (c >= 0 && (distinct == 0 || sorted[distinct - 1] != c)) sorted[distinct++] = c;
+        }
+        if (!isWalkable(source, obsColor) || distinct == 0) return ans;
+
+        int src = index(source.getX(), source.getY());
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int[] q = ws.queue, dist = ws.dist(), first = ws.parent;
+            int head = 0, tail = 0;
+            q[tail++] = src;
+            ws.mark(src);
+            dist[src] = 0;
+            first[src] = -1;
+            int pending = distinct;
+            if (Arrays.binarySearch(sorted, 0, distinct, src) >= 0) pending--;
+            while (head < tail && pending > 0) {
+                int cur = q[head++];
+                int x = cur / _h, y = cur - x * _h;
+                for (int d = 0; d < 4; d++) {
+                    int nb = neighbor(cur, x, y, d);
+                    if (nb < 0 || ws.isMarked(nb) || cell(nb) == obsColor) continue;
+                    ws.mark(nb);
+                    dist[nb] = dist[cur] + 1;
+                    first[nb] = (cur == src) ? d : first[cur];
+                    q[tail++] = nb;
+                    if (Arrays.binarySearch(sorted, 0, distinct, nb) >= 0) pending--;
+                }
+            }
+            for (int j = 0; j < k; j++) {
+                int c = cells[j];
+                if (c < 0 || !ws.isMarked(c)) continue;
+                ans[j] = dist[c];
+                if (firstSteps != null) firstSteps[j] = first[c];
+            }
+            return ans;
+        } finally {
+            ws.release();
         }
-        return null;
     }
 
     /**
@@ -285,41 +754,219 @@ public class Map implements Map2D {
         requirePixel(start);
         if (!isInside(start)) return null;
 
-        Map ans = new Map(getWidth(), getHeight(), -1);
+        Map ans = new Map(_w, _h, -1);
         ans.setCyclic(isCyclic());
 
-        if (getPixel(start) == obsColor) return ans;
+        int src = index(start.getX(), start.getY());
+        if (cell(src) == obsColor) return ans;
 
-        ArrayDeque<Pixel2D> q = new ArrayDeque<>();
-        q.addLast(new Index2D(start));
-        ans.setPixel(start, 0);
+        multiSourceBfs(new int[]{src}, null, 1, obsColor, ans._data, null);
+        return ans;
+    }
 
-        while (!q.isEmpty()) {
-            Pixel2D cur = q.removeFirst();
-            int d = ans.getPixel(cur);
+    /**
+     * Computes, in a single BFS pass, the distance from every cell to its nearest source.
+     * Obstacle cells (with value {@code obsColor}) are ignored, and so are sources that are
+     * outside the map or on an obstacle.
+     *
+     * @param sources the source pixels (e.g. all the ghosts)
+     * @param obsColor obstacle value
+     * @return a map where each cell holds the distance to its nearest source, or -1 if no source reaches it
+     * @throws RuntimeException if map not initialized or sources is null
+     */
+    public Map2D allDistance(Pixel2D[] sources, int obsColor) {
+        return allDistance(sources, obsColor, null);
+    }
 
-            for (Pixel2D nb : neighbors4(cur)) {
-                if (!isInside(nb)) continue;
-                if (getPixel(nb) == obsColor) continue;
-                if (ans.getPixel(nb) != -1) continue;
+    /**
+     * Same as {@link #allDistance(Pixel2D[], int)}, and also labels every cell with the
+     * index (in {@code sources}) of its nearest source. Ties are broken by BFS order.
+     *
+     * @param sources the source pixels
+     * @param obsColor obstacle value
+     * @param nearest if not null, a map of the same size which receives the nearest-source index
+     *                of each cell (-1 if no source reaches it)
+     * @return a map where each cell holds the distance to its nearest source, or -1 if no source reaches it
+     * @throws RuntimeException if map not initialized, sources is null or nearest has a different size
+     */
+    public Map2D allDistance(Pixel2D[] sources, int obsColor, Map2D nearest) {
+        checkMapInitialized();
+        if (sources == null) throw new RuntimeException("Sources array is null");
+        if (nearest != null && (nearest.getWidth() != _w || nearest.getHeight() != _h)) {
+            throw new RuntimeException("Nearest-source map must be " + _w + "x" + _h);
+        }
 
-                ans.setPixel(nb, d + 1);
-                q.addLast(new Index2D(nb));
-            }
+        Map ans = new Map(_w, _h, -1);
+        ans.setCyclic(isCyclic());
+
+        // The kept sources, and the position in sources of each (the label of its cells).
+        int[] src = new int[sources.length], srcPos = new int[sources.length];
+        int count = 0;
+        for (int k = 0; k < sources.length; k++) {
+            Pixel2D p = sources[k];
+            if (!isWalkable(p, obsColor)) continue;
+            srcPos[count] = k;
+            src[count++] = index(p.getX(), p.getY());
         }
+
+        multiSourceBfs(src, srcPos, count, obsColor, ans._data, nearest);
         return ans;
     }
 
+    /**
+     * Generic BFS from one cell: the visitor sees every reachable cell once, by non-decreasing
+     * distance, and decides whether to expand it, prune it or stop (see {@link CellVisitor}).
+     * Nothing is allocated per cell, and the neighbor table of the map is used when it has one
+     * for obsColor, so custom searches (ghost danger zones, coin clusters...) need no BFS of their own.
+     *
+     * @param start start pixel (visited first, at depth 0)
+     * @param obsColor obstacle value
+     * @param visitor the callback
+     * @return the cell where the visitor returned STOP, or null if it never did
+     * (or start is outside the map or an obstacle)
+     * @throws RuntimeException if map not initialized, start or visitor is null
+     */
+    public Pixel2D traverse(Pixel2D start, int obsColor, CellVisitor visitor) {
+        requirePixel(start);
+        if (visitor == null) throw new RuntimeException("Visitor is null");
+        if (!isWalkable(start, obsColor)) return null;
+        return traverse(new int[]{index(start.getX(), start.getY())}, 1, obsColor, null, visitor);
+    }
+
+    /**
+     * Generic multi-source BFS: like {@link #traverse(Pixel2D, int, CellVisitor)}, from all the
+     * starts at once (depth is then the distance to the nearest start), over the cells whose
+     * value passes {@code walkable}.
+     *
+     * @param starts start pixels; those outside the map or not walkable are skipped
+     * @param walkable which cell values may be entered
+     * @param visitor the callback
+     * @return the cell where the visitor returned STOP, or null if it never did
+     * @throws RuntimeException if map not initialized, or starts, walkable or visitor is null
+     */
+    public Pixel2D traverse(Pixel2D[] starts, IntPredicate walkable, CellVisitor visitor) {
+        checkMapInitialized();
+        if (starts == null) throw new RuntimeException("Starts array is null");
+        if (walkable == null) throw new RuntimeException("Walkable predicate is null");
+        if (visitor == null) throw new RuntimeException("Visitor is null");
+        int[] src = new int[starts.length];
+        int count = 0;
+        for (Pixel2D p : starts) {
+            if (isInside(p) && walkable.test(getPixel(p))) src[count++] = index(p.getX(), p.getY());
+        }
+        return traverse(src, count, 0, walkable, visitor);
+    }
+
+    /**
+     * Builds a bit-packed snapshot of the walkable cells (64 cells per long),
+     * for repeated reachability queries on large maps.
+     *
+     * @param obsColor obstacle value
+     * @return a mask of the cells which are not obsColor (with the current cyclic flag)
+     * @throws RuntimeException if map not initialized
+     */
+    public WalkableMask walkableMask(int obsColor) {
+        checkMapInitialized();
+        return WalkableMask.of(this, obsColor);
+    }
+
+    /**
+     * Computes all the cells reachable from {@code start} (4-neighbors), using the bit-parallel
+     * search of {@link WalkableMask}. Cyclic wrapping is respected if enabled.
+     *
+     * @param start start pixel
+     * @param obsColor obstacle value
+     * @return a mask of the reachable cells (empty if start is outside the map or an obstacle)
+     * @throws RuntimeException if map not initialized or start is null
+     */
+    public WalkableMask reachable(Pixel2D start, int obsColor) {
+        requirePixel(start);
+        return WalkableMask.of(this, obsColor).reachableFrom(start);
+    }
+
+    /**
+     * Returns the connected-component index of the walkable cells, for O(1) reachability,
+     * region size and "is any of these values reachable" queries (see {@link ComponentIndex}).
+     * The map keeps the index it returned last and updates it on every change, so repeated calls
+     * with the same arguments return the same object; other arguments replace it (and the
+     * replaced index no longer follows the map).
+     *
+     * @param obsColor obstacle value
+     * @param countedValues values whose cells are counted per component (e.g. coins and apples)
+     * @return the component index of this map
+     * @throws RuntimeException if map not initialized, or a counted value repeats or equals obsColor
+     */
+    public ComponentIndex components(int obsColor, int... countedValues) {
+        checkMapInitialized();
+        if (countedValues == null) countedValues = new int[0];
+        if (_components == null || !_components.matches(obsColor, countedValues)) {
+            _components = new ComponentIndex(this, obsColor, countedValues);
+        }
+        return _components;
+    }
+
+    /**
+     * Returns the neighbor table of this map for an obstacle value: the open directions of
+     * every cell, one byte each (see {@link NeighborTable}).
+     * The table is built on the first call and kept up to date by {@link #setPixel} (a cell
+     * that becomes or stops being an obstacle updates its 4 neighbors); bulk changes rebuild it
+     * on the next use. While the table exists, the BFS searches of this map with the same
+     * obstacle value step through it, without divisions or border checks.
+     * A call with another obstacle value replaces the table.
+     *
+     * @param obsColor obstacle value
+     * @return the neighbor table of this map
+     * @throws RuntimeException if map not initialized
+     */
+    public NeighborTable neighborTable(int obsColor) {
+        checkMapInitialized();
+        if (_neighbors == null || _neighbors.getObstacleColor() != obsColor) {
+            _neighbors = new NeighborTable(this, obsColor);
+        }
+        return _neighbors;
+    }
+
+    /**
+     * Returns the version of the obstacle layer of this map: which cells are obsColor, the size
+     * and the cyclic flag. The version changes only when that layer does - {@link #setPixel}
+     * bumps it when a cell becomes or stops being an obstacle (not when a coin is eaten), and
+     * bulk changes and setCyclic bump it too. Copies and forks keep the version of their source
+     * until either one changes its layer. Versions are unique across all maps, so (version,
+     * obsColor) identifies a layout for caching the searches over it (see {@link DistanceCache}).
+     * One obstacle value is tracked at a time; asking for another one starts a new version.
+     *
+     * @param obsColor obstacle value
+     * @return the layer version, positive
+     * @throws RuntimeException if map not initialized
+     */
+    public long layerVersion(int obsColor) {
+        checkMapInitialized();
+        if (_layerVersion == 0 || _layerObs != obsColor) {
+            _layerObs = obsColor;
+            _layerVersion = LAYER_VERSIONS.incrementAndGet();
+        }
+        return _layerVersion;
+    }
+
     /**
      * @param p pixel
      * @return true iff pixel p is inside bounds
      */
     @Override
     public boolean isInside(Pixel2D p) {
-        if (_map == null || p == null) return false;
+        if (_data == null || p == null) return false;
         return isInsideXY(p.getX(), p.getY());
     }
 
+    /**
+     * @param xy packed coordinate (see {@link Index2D#pack(int, int)})
+     * @return true iff xy is inside bounds
+     */
+    public boolean isInside(long xy) {
+        if (_data == null) return false;
+        return isInsideXY(Index2D.unpackX(xy), Index2D.unpackY(xy));
+    }
+
     /**
      * @return true iff this map is cyclic (wrap-around enabled)
      */
@@ -335,89 +982,344 @@ public class Map implements Map2D {
      */
     @Override
     public void setCyclic(boolean cy) {
+        if (cy != _cyclicFlag) invalidateIndexes();
         _cyclicFlag = cy;
     }
 
+    // ----------------- package-private raw access (used by the search helpers) -----------------
+
+    /** @return the flat index of (x,y): x*height + y (no bounds checks). */
+    final int index(int x, int y) {
+        return x * _h + y;
+    }
+
+    /** @return the value stored at the flat index i (no bounds checks). */
+    final int cell(int i) {
+        int[][] tiles = _tiles;
+        if (tiles != null) {
+            int[] t = tiles[i >>> TILE_BITS];
+            if (t != null) return t[i & (TILE_SIZE - 1)];
+        }
+        return _data[i];
+    }
+
+    /**
+     * @return a mask word: bit j is set iff the cell at flat index from+j holds v (count at most 64)
+     */
+    final long equalBits(int from, int count, int v) {
+        if (_tiles == null) return BulkOps.equalBits(_data, from, count, v);
+        long word = 0;
+        for (int j = 0; j < count; j++) {
+            if (cell(from + j) == v) word |= 1L << j;
+        }
+        return word;
+    }
+
+    /** Stores v at the flat index i (no bounds checks), copying its tile first if it is shared. */
+    final void setCell(int i, int v) {
+        if (_tiles == null) _data[i] = v;
+        else writableTile(i >>> TILE_BITS)[i & (TILE_SIZE - 1)] = v;
+    }
+
+    /**
+     * Returns the flat index of the neighbor of {@code i} in direction {@code d}
+     * (see {@link #DX}/{@link #DY}), wrapping around the borders if this map is cyclic.
+     *
+     * @param i the flat index of the cell
+     * @param x the x coordinate of the cell (i == index(x,y))
+     * @param y the y coordinate of the cell
+     * @param d direction 0..3
+     * @return the neighbor's flat index, or -1 if it falls outside a non-cyclic map
+     */
+    final int neighbor(int i, int x, int y, int d) {
+        switch (d) {
+            case 0:
+                if (y > 0) return i - 1;
+                return _cyclicFlag ? i + _h - 1 : -1;
+            case 1:
+                if (x > 0) return i - _h;
+                return _cyclicFlag ? i + (_w - 1) * _h : -1;
+            case 2:
+                if (y < _h - 1) return i + 1;
+                return _cyclicFlag ? i - _h + 1 : -1;
+            default:
+                if (x < _w - 1) return i + _h;
+                return _cyclicFlag ? i - (_w - 1) * _h : -1;
+        }
+    }
+
+    /** @return a new pixel for the flat index i. */
+    final Pixel2D pixelAt(int i) {
+        int x = i / _h;
+        return new Index2D(x, i - x * _h);
+    }
+
+    /**
+     * Reconstructs a path from src to dst using a parent array.
+     * Assumes dst is reachable (i.e., parent chain exists).
+     *
+     * @param src start index
+     * @param dst target index
+     * @param parent parent[i] is the predecessor of i on the search tree
+     * @return path including src and dst
+     */
+    final Pixel2D[] buildPath(int src, int dst, int[] parent) {
+        int len = 1;
+        for (int cur = dst; cur != src; cur = parent[cur]) len++;
+
+        Pixel2D[] path = new Pixel2D[len];
+        int cur = dst;
+        for (int i = len - 1; i >= 0; i--) {
+            path[i] = pixelAt(cur);
+            cur = parent[cur];
+        }
+        return path;
+    }
+
     // ----------------- private helpers -----------------
 
+    /** Runs {@link Traversal} in a fresh workspace; returns the STOP cell as a pixel, or null. */
+    private Pixel2D traverse(int[] src, int count, int obsColor, IntPredicate walkable, CellVisitor visitor) {
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            int stop = Traversal.run(this, src, count, obsColor, walkable, visitor, ws);
+            return (stop < 0) ? null : pixelAt(stop);
+        } finally {
+            ws.release();
+        }
+    }
+
+    /** Keeps the derived indexes of this map in step with a change of cell i from old to v. */
+    private void onCellChanged(int i, int old, int v) {
+        if (_components != null) _components.cellChanged(i, old, v);
+        if (_neighbors != null) _neighbors.cellChanged(i, old, v);
+        if (_layerVersion != 0 && (old == _layerObs) != (v == _layerObs)) {
+            _layerVersion = LAYER_VERSIONS.incrementAndGet();
+        }
+    }
+
+    /** Marks the derived indexes of this map stale after a bulk change; the next use rebuilds them. */
+    private void invalidateIndexes() {
+        if (_components != null) _components.invalidate();
+        if (_neighbors != null) _neighbors.invalidate();
+        _layerVersion = 0;
+    }
+
+    /** @return the neighbor table of this map if one was requested for obsColor, null otherwise. */
+    final NeighborTable neighborsFor(int obsColor) {
+        NeighborTable t = _neighbors;
+        return (t != null && t.getObstacleColor() == obsColor) ? t : null;
+    }
+
+    /** @return the tile k of this map, copied first unless this map already owns it. */
+    private int[] writableTile(int k) {
+        int[] t = _tiles[k];
+        long bit = 1L << k;
+        if ((_ownedTiles[k >>> 6] & bit) == 0) {
+            int from = k << TILE_BITS;
+            t = (t != null) ? t.clone() : Arrays.copyOfRange(_data, from, from + TILE_SIZE);
+            _tiles[k] = t;
+            _ownedTiles[k >>> 6] |= bit;
+        }
+        return t;
+    }
+
+    /** @return a new flat array holding the cells of this map. */
+    private int[] flatCopy() {
+        int[] ans = _data.clone();
+        if (_tiles == null) return ans;
+        for (int k = 0; k < _tiles.length; k++) {
+            int[] t = _tiles[k];
+            if (t == null) continue;
+            int from = k << TILE_BITS;
+            System.arraycopy(t, 0, ans, from, Math.min(TILE_SIZE, ans.length - from));
+        }
+        return ans;
+    }
+
+    /** Gives this map a private flat storage (before bulk writes that work on the array). */
+    private void ownData() {
+        if (_tiles == null) return;
+        _data = flatCopy();
+        _tiles = null;
+        _ownedTiles = null;
+    }
+
     /** @throws RuntimeException if the map has not been initialized. */
     private void checkMapInitialized() {
-        if (_map == null) throw new RuntimeException("Map is not initialized");
+        if (_data == null) throw new RuntimeException("Map is not initialized");
     }
 
     /** @return true iff (x,y) is inside bounds. */
     private boolean isInsideXY(int x, int y) {
-        return x >= 0 && x < getWidth() && y >= 0 && y < getHeight();
+        return x >= 0 && x < _w && y >= 0 && y < _h;
     }
 
     /**
-     * Returns the 4-neighborhood of p (up, left, down, right).
-     * If cyclic is enabled, neighbors wrap around the borders.
+     * Plain BFS from src until dst is discovered.
      *
-     * @param p center pixel
-     * @return array of 4 neighbor pixels (some may be outside if non-cyclic)
+     * @param src start index
+     * @param dst target index (different from src)
+     * @param obsColor obstacle value
+     * @param ws a workspace started for this map
+     * @return the shortest path, or null if dst is unreachable
      */
-    private Pixel2D[] neighbors4(Pixel2D p) {
-        int x = p.getX(), y = p.getY();
-        int w = getWidth(), h = getHeight();
-
-        int leftX = x - 1, rightX = x + 1;
-        int upY = y - 1, downY = y + 1;
-
-        if (isCyclic()) {
-            leftX = wrap(leftX, w);
-            rightX = wrap(rightX, w);
-            upY = wrap(upY, h);
-            downY = wrap(downY, h);
-        }
+    private Pixel2D[] bfsPath(int src, int dst, int obsColor, SearchWorkspace ws) {
+        return bfsSearch(src, dst, obsColor, ws) ? buildPath(src, dst, ws.parent) : null;
+    }
 
-        return new Pixel2D[] {
-                new Index2D(x, upY),
-                new Index2D(leftX, y),
-                new Index2D(x, downY),
-                new Index2D(rightX, y)
-        };
+    /**
+     * Plain BFS from src until dst is reached (see {@link Traversal}), leaving the search tree
+     * in {@code ws.parent}.
+     *
+     * @param src start index
+     * @param dst target index (different from src)
+     * @param obsColor obstacle value
+     * @param ws a workspace started for this map
+     * @return true iff dst was reached
+     */
+    private boolean bfsSearch(int src, int dst, int obsColor, SearchWorkspace ws) {
+        return Traversal.search(this, new int[]{src}, 1, obsColor, null, null, dst, Traversal.UNLIMITED, null, ws) == dst;
     }
 
     /**
-     * Wraps an index into [0, max-1] (modulo arithmetic).
+     * Level-order BFS from all the given sources at once.
+     * The distances are written straight into {@code dist}; -1 doubles as "not visited".
+     * Large maps without labels go through the parallel BFS of {@link ParallelBfs} on multi-core
+     * machines, and through the bit-packed BFS of {@link WalkableMask} otherwise.
+     * Labeled searches stay sequential (on {@link Traversal}), since their ties are broken by BFS order.
      *
-     * @param v index (may be negative or >= max)
-     * @param max dimension size
-     * @return wrapped index in [0..max-1]
+     * @param src source indices (must be walkable), only the first count are used
+     * @param srcPos the label of each source (its position in the caller's array); used with nearest
+     * @param count number of sources
+     * @param obsColor obstacle value
+     * @param dist output distances, pre-filled with -1
+     * @param nearest if not null, receives the label of the source that reached each cell
      */
-    private int wrap(int v, int max) {
-        int r = v % max;
-        if (r < 0) r += max;
-        return r;
+    private void multiSourceBfs(int[] src, int[] srcPos, int count, int obsColor, int[] dist, Map2D nearest) {
+        if (nearest == null && _w * _h >= PARALLEL_DISTANCE_MIN_CELLS && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ParallelBfs.distances(this, src, count, obsColor, dist, ForkJoinPool.commonPool());
+            return;
+        }
+        if (nearest == null && _w * _h >= BIT_DISTANCE_MIN_CELLS) {
+            WalkableMask.of(this, obsColor).distances(src, count, dist);
+            return;
+        }
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * _h);
+        try {
+            // The labels live in the aux buffer; they are read only where dist != -1.
+            Traversal.search(this, src, count, obsColor, null, null, -1, Traversal.UNLIMITED, dist, ws);
+
+            if (nearest != null) {
+                int[] label = ws.aux(), parent = ws.parent, q = ws.queue;
+                for (int i = count - 1; i >= 0; i--) label[src[i]] = srcPos[i]; // The first copy of a source wins.
+                for (int k = 0; k < ws.queued; k++) { // BFS order: every parent is labeled first.
+                    int c = q[k];
+                    if (parent[c] != c) label[c] = label[parent[c]];
+                }
+                for (int x = 0; x < _w; x++) {
+                    for (int y = 0; y < _h; y++) {
+                        int i = index(x, y);
+                        nearest.setPixel(x, y, (dist[i] == -1) ? -1 : label[i]);
+                    }
+                }
+            }
+        } finally {
+            ws.release();
+        }
     }
 
     /**
-     * Reconstructs a path from p1 to p2 using the parent matrix.
-     * Assumes p2 is reachable (i.e., parent chain exists).
+     * Scanline flood fill: paints whole vertical spans (the contiguous axis of {@code _data})
+     * and seeds the neighbor columns once per old_v run beside each span.
+     * A painted cell no longer holds old_v, so the map itself doubles as the visited set.
      *
-     * @param p1 start pixel
-     * @param p2 target pixel
-     * @param parent parent pointers: parent[x][y] is the predecessor on the BFS tree
-     * @return path including p1 and p2, or null on inconsistent parent chain
+     * @param start the first cell (holding old_v)
+     * @param old_v the value of the region
+     * @param new_v the new value (different from old_v)
+     * @return number of cells painted
      */
-    private Pixel2D[] buildPath(Pixel2D p1, Pixel2D p2, Pixel2D[][] parent) {
-        ArrayList<Pixel2D> rev = new ArrayList<>();
-        Pixel2D cur = new Index2D(p2);
-        rev.add(cur);
+    private int scanlineFill(int start, int old_v, int new_v) {
+        int[] data = _data;
+        int h = _h;
+        SearchWorkspace ws = SearchWorkspace.acquire(_w * h);
+        try {
+            int[] stack = ws.queue; // A cell may be seeded from both sides, so the stack can outgrow n.
+            int top = 0, count = 0;
+            stack[top++] = start;
+            while (top > 0) {
+                int seed = stack[--top];
+                if (data[seed] != old_v) continue;
+                int x = seed / h, base = x * h;
+                // Grow the span [lo, lo+len) around the seed, wrapping around the column if cyclic.
+                int lo = seed - base, len = 1;
+                data[seed] = new_v;
+                for (int y = lo + 1; ; y++, len++) {
+                    if (y == h) {
+                        if (!_cyclicFlag) break;
+                        y = 0;
+                    }
+                    if (data[base + y] != old_v) break;
+                    data[base + y] = new_v;
+                }
+                for (int y = lo - 1; ; y--) {
+                    if (y < 0) {
+                        if (!_cyclicFlag) break;
+                        y = h - 1;
+                    }
+                    if (data[base + y] != old_v) break;
+                    data[base + y] = new_v;
+                    lo = y;
+                    len++;
+                }
+                count += len;
 
-        while (!cur.equals(p1)) {
-            Pixel2D par = parent[cur.getX()][cur.getY()];
-            if (par == null) return null;
-            cur = par;
-            rev.add(cur);
+                for (int side = -1; side <= 1; side += 2) {
+                    int nx = x + side;
+                    if (nx < 0 || nx >= _w) {
+                        if (!_cyclicFlag) continue;
+                        nx = (nx < 0) ? _w - 1 : 0;
+                    }
+                    int nbase = nx * h;
+                    boolean inRun = false;
+                    for (int j = 0, y = lo; j < len; j++, y = (y + 1 == h) ? 0 : y + 1) {
+                        boolean open = data[nbase + y] == old_v;
+                        if (open && !inRun) {
+                            if (top == stack.length) stack = Arrays.copyOf(stack, 2 * top);
+                            stack[top++] = nbase + y;
+                        }
+                        inRun = open;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            ws.release();
         }
+    }
 
-        Pixel2D[] path = new Pixel2D[rev.size()];
-        for (int i = 0; i < rev.size(); i++) {
-            path[i] = rev.get(rev.size() - 1 - i);
+    /**
+     * Sets every cell of the mask to v.
+     *
+     * @param region a mask of this map
+     * @param v the new value
+     * @return number of cells set
+     */
+    private int paint(WalkableMask region, int v) {
+        long[] words = region.words();
+        int k = region.wordsPerColumn();
+        int count = 0;
+        for (int wi = 0; wi < words.length; wi++) {
+            long b = words[wi];
+            if (b == 0) continue;
+            int x = wi / k;
+            int base = x * _h + ((wi - x * k) << 6);
+            for (; b != 0; b &= b - 1) {
+                _data[base + Long.numberOfTrailingZeros(b)] = v;
+                count++;
+            }
         }
-        return path;
+        return count;
     }
 
     /**
@@ -437,20 +1339,4 @@ public class Map implements Map2D {
     private boolean isWalkable(Pixel2D p, int obsColor) {
         return isInside(p) && getPixel(p) != obsColor;
     }
-
-    /**
-     * Enqueues nb for flood-fill iff it is inside, not visited yet, and equals matchValue.
-     * Also marks the neighbor as visited at enqueue time (prevents duplicates in the queue).
-     */
-    private void enqueueIfMatch(Pixel2D nb, int matchValue,
-                                boolean[][] visited, ArrayDeque<Pixel2D> q) {
-        if (!isInside(nb)) return;
-        int x = nb.getX(), y = nb.getY();
-        if (visited[x][y]) return;
-        if (getPixel(nb) != matchValue) return;
-
-        visited[x][y] = true;
-        q.addLast(new Index2D(nb));
-    }
 }
-
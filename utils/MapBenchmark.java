@@ -0,0 +1,156 @@
+package assignments.Ex3.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MapBenchmark - compares the shortestPath strategies of {@link Map}.
+ * For every board and every {@link PathStrategy} it runs the same random queries and prints
+ * the average number of expanded cells and the average time per query.
+ * Two query kinds are measured: "short" hops (target at most 20 steps away on each axis) and
+ * "random" pairs of walkable cells.
+ *
+ * Run main() (optionally with a random seed as the first argument).
+ */
+public class MapBenchmark {
+    private static final int QUERIES = 200;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int SHORT_HOP = 20;
+
+    public static void main(String[] args) {
+        long seed = (args.length > 0) ? Long.parseLong(args[0]) : 31;
+        Random rnd = new Random(seed);
+
+        run("open 200x200 (10% walls)", randomBoard(rnd, 200, 200, 0.10), rnd);
+        run("open 1000x1000 (5% walls)", randomBoard(rnd, 1000, 1000, 0.05), rnd);
+        run("maze 201x201 (braided)", maze(rnd, 201, 201, 0.10), rnd);
+        run("maze 1001x1001 (braided)", maze(rnd, 1001, 1001, 0.10), rnd);
+    }
+
+    /**
+     * Benchmarks all the strategies on one board and prints a table row per (query kind, strategy).
+     *
+     * @param name the board description
+     * @param board the board (1 = wall)
+     * @param rnd random source for the queries
+     */
+    static void run(String name, int[][] board, Random rnd) {
+        Map map = new Map(board);
+        map.setCyclic(true);
+        System.out.println("== " + name + " ==");
+        for (boolean shortHops : new boolean[]{true, false}) {
+            Pixel2D[][] queries = queries(map, rnd, shortHops);
+            for (PathStrategy strategy : PathStrategy.values()) {
+                for (int i = 0; i < WARMUP_ROUNDS; i++) measure(map, queries, strategy);
+                long[] r = measure(map, queries, strategy);
+                System.out.printf("  %-6s %-13s expanded/query: %10.1f   time/query: %9.1f us%n",
+                        shortHops ? "short" : "random", strategy,
+                        r[0] / (double) queries.length, r[1] / 1000.0 / queries.length);
+            }
+        }
+    }
+
+    /** @return {total expanded cells, total nanoseconds} over all the queries. */
+    private static long[] measure(Map map, Pixel2D[][] queries, PathStrategy strategy) {
+        long expanded = 0;
+        long start = System.nanoTime();
+        for (Pixel2D[] q : queries) {
+            map.shortestPath(q[0], q[1], 1, strategy);
+            expanded += map.getLastExpandedCount();
+        }
+        return new long[]{expanded, System.nanoTime() - start};
+    }
+
+    /** @return random pairs of walkable cells (close to each other if shortHops). */
+    private static Pixel2D[][] queries(Map map, Random rnd, boolean shortHops) {
+        int w = map.getWidth(), h = map.getHeight();
+        Pixel2D[][] ans = new Pixel2D[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            Pixel2D a = randomFree(map, rnd, rnd.nextInt(w), rnd.nextInt(h), w, h);
+            Pixel2D b;
+            if (shortHops) {
+                int x = (a.getX() + rnd.nextInt(2 * SHORT_HOP + 1) - SHORT_HOP + w) % w;
+                int y = (a.getY() + rnd.nextInt(2 * SHORT_HOP + 1) - SHORT_HOP + h) % h;
+                b = randomFree(map, rnd, x, y, w, h);
+            } else {
+                b = randomFree(map, rnd, rnd.nextInt(w), rnd.nextInt(h), w, h);
+            }
+            ans[i] = new Pixel2D[]{a, b};
+        }
+        return ans;
+    }
+
+    /** @return (x,y) if it is walkable, otherwise a random walkable cell. */
+    private static Pixel2D randomFree(Map map, Random rnd, int x, int y, int w, int h) {
+        while (map.getPixel(x, y) == 1) {
+            x = rnd.nextInt(w);
+            y = rnd.nextInt(h);
+        }
+        return new Index2D(x, y);
+    }
+
+    /** @return a w*h board where each cell is a wall (1) with the given probability. */
+    static int[][] randomBoard(Random rnd, int w, int h, double wallRatio) {
+        int[][] board = new int[w][h];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                if (rnd.nextDouble() < wallRatio) board[x][y] = 1;
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Generates a maze with the iterative randomized DFS (recursive backtracker): rooms on the
+     * even coordinates, walls in between. Then removes a share of the inner walls so the maze
+     * has loops (a "braided" maze), like a Pacman board.
+     *
+     * @param rnd random source
+     * @param w width (odd for a closed border)
+     * @param h height (odd for a closed border)
+     * @param braid share of the inner walls to remove, in [0,1]
+     * @return the maze (1 = wall, 0 = free)
+     */
+    static int[][] maze(Random rnd, int w, int h, double braid) {
+        int[][] board = new int[w][h];
+        for (int[] col : board) Arrays.fill(col, 1);
+        int cw = (w - 1) / 2, ch = (h - 1) / 2;
+        boolean[] seen = new boolean[cw * ch];
+        int[] stack = new int[cw * ch];
+        int top = 0;
+        stack[top++] = 0;
+        seen[0] = true;
+        board[1][1] = 0;
+        int[] dirs = {0, 1, 2, 3};
+        while (top > 0) {
+            int c = stack[top - 1];
+            int cx = c / ch, cy = c % ch;
+            shuffle(dirs, rnd);
+            boolean moved = false;
+            for (int d : dirs) {
+                int nx = cx + Map.DX[d], ny = cy + Map.DY[d];
+                if (nx < 0 || ny < 0 || nx >= cw || ny >= ch || seen[nx * ch + ny]) continue;
+                seen[nx * ch + ny] = true;
+                board[2 * cx + 1 + Map.DX[d]][2 * cy + 1 + Map.DY[d]] = 0;
+                board[2 * nx + 1][2 * ny + 1] = 0;
+                stack[top++] = nx * ch + ny;
+                moved = true;
+                break;
+            }
+            if (!moved) top--;
+        }
+        for (int x = 1; x < w - 1; x++) {
+            for (int y = 1; y < h - 1; y++) {
+                if (board[x][y] == 1 && rnd.nextDouble() < braid) board[x][y] = 0;
+            }
+        }
+        return board;
+    }
+
+    private static void shuffle(int[] a, Random rnd) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = a[i]; a[i] = a[j]; a[j] = t;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package assignments.Ex3.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MapFile - a compact, versioned binary file format for maps, replacing Java serialization.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   int   magic "EX3M"
+ *   short version
+ *   short cell width in bytes (1, 2 or 4 - the narrowest signed width holding every value)
+ *   int   width
+ *   int   height
+ *   int   flags (bit 0 = cyclic)
+ *   cells, column by column (x-major, the layout of {@link Map}), cell width bytes each
+ * </pre>
+ * A game board with 1-byte cells takes 20 bytes + one byte per cell, against an object per
+ * column and 4 bytes per cell for a serialized {@code int[][]}.
+ * {@link #read(Path)} maps the file with {@link FileChannel#map} and decodes the cells straight
+ * into a new Map - no streams, strings or reflection.
+ *
+ * Converters: {@link #readSerialized(Path)} reads the old {@code ObjectOutputStream} files
+ * (e.g. test.bit), and {@link #main(String[])} converts them on the command line. The text
+ * format of GameBoard is converted with {@code GameBoard.convertText}.
+ */
+public final class MapFile {
+    /** File name extension of map files. */
+    public static final String EXTENSION = ".ex3m";
+    private static final int MAGIC = 0x4558334D; // "EX3M"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private MapFile() {}
+
+    /**
+     * Writes a map to a file.
+     *
+     * @param map the map
+     * @param file the target file (replaced if it exists)
+     * @throws RuntimeException if map or file is null, or the file cannot be written
+     */
+    public static void write(Map2D map, Path file) {
+        if (map == null) throw new RuntimeException("Map is null");
+        if (file == null) throw new RuntimeException("Path is null");
+        int w = map.getWidth(), h = map.getHeight();
+        int min = 0, max = 0;
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                int v = map.getPixel(x, y);
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+        }
+        int cellBytes = (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) ? 1
+                : (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) ? 2 : 4;
+
+        long size = HEADER_BYTES + (long) w * h * cellBytes;
+        if (size > Integer.MAX_VALUE) throw new RuntimeException("Map is too large for a map file: " + w + "x" + h);
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(MAGIC).putShort(VERSION).putShort((short) cellBytes)
+                .putInt(w).putInt(h).putInt(map.isCyclic() ? 1 : 0);
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                int v = map.getPixel(x, y);
+                if (cellBytes == 1) buf.put((byte) v);
+                else if (cellBytes == 2) buf.putShort((short) v);
+                else buf.putInt(v);
+            }
+        }
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write map file " + file, e);
+        }
+    }
+
+    /**
+     * Reads a map file.
+     *
+     * @param file the map file
+     * @return a new map with the file's cells and cyclic flag
+     * @throws RuntimeException if the file cannot be read or is not a valid map file
+     */
+    public static Map read(Path file) {
+        if (file == null) throw new RuntimeException("Path is null");
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read map file " + file, e);
+        }
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) throw new RuntimeException("Not a map file: " + file);
+        if (buf.getShort(4) != VERSION) throw new RuntimeException("Unsupported map file version " + buf.getShort(4));
+        int cellBytes = buf.getShort(6), w = buf.getInt(8), h = buf.getInt(12), flags = buf.getInt(16);
+        if (cellBytes != 1 && cellBytes != 2 && cellBytes != 4) throw new RuntimeException("Bad cell width " + cellBytes + ": " + file);
+        if (w <= 0 || h <= 0 || (long) w * h * cellBytes != buf.capacity() - HEADER_BYTES) {
+            throw new RuntimeException("Corrupt map file (size does not match " + w + "x" + h + "): " + file);
+        }
+
+        Map ans = new Map(w, h, 0);
+        ans.setCyclic((flags & 1) != 0);
+        int n = w * h;
+        buf.position(HEADER_BYTES);
+        if (cellBytes == 1) {
+            for (int i = 0; i < n; i++) ans.setCell(i, buf.get());
+        } else if (cellBytes == 2) {
+            for (int i = 0; i < n; i++) ans.setCell(i, buf.getShort());
+        } else {
+            for (int i = 0; i < n; i++) ans.setCell(i, buf.getInt());
+        }
+        return ans;
+    }
+
+    /**
+     * Reads an old map file: an {@code int[][]} (indexed [x][y]) written with ObjectOutputStream.
+     *
+     * @param file the serialized file
+     * @return a new (cyclic) map with the same cells
+     * @throws RuntimeException if the file cannot be read or does not hold an int[][]
+     */
+    public static Map readSerialized(Path file) {
+        if (file == null) throw new RuntimeException("Path is null");
+        try (InputStream in = Files.newInputStream(file); ObjectInputStream ois = new ObjectInputStream(in)) {
+            Object o = ois.readObject();
+            if (!(o instanceof int[][])) throw new RuntimeException("Not a serialized int[][]: " + file);
+            return new Map((int[][]) o);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Cannot read serialized map " + file, e);
+        }
+    }
+
+    /**
+     * Converts serialized {@code int[][]} map files (like test.bit) to map files.
+     * Usage: {@code MapFile <in.bit> [out.ex3m]} - the default output replaces the extension.
+     *
+     * @param args the input file and an optional output file
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: MapFile <serialized int[][] file> [output" + EXTENSION + "]");
+            return;
+        }
+        Path in = Path.of(args[0]);
+        Path out = (args.length > 1) ? Path.of(args[1]) : in.resolveSibling(in.getFileName().toString().replaceFirst("\\.[^.]*$", "") + EXTENSION);
+        Map map = readSerialized(in);
+        write(map, out);
+        System.out.println("Wrote " + out + " (" + map.getWidth() + "x" + map.getHeight() + ")");
+    }
+}
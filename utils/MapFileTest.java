@@ -0,0 +1,81 @@
+package assignments.Ex3.utils;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit 5 Testing class for the binary map file format.
+ */
+public class MapFileTest {
+
+    /**
+     * Test 1: Round trip
+     * Maps with small, short-sized and int-sized values (and both cyclic flags) read back equal,
+     * with the narrowest cell width.
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        Path file = Files.createTempFile("map", MapFile.EXTENSION);
+        try {
+            int[] extremes = {5, -1, 1000, -40000, Integer.MAX_VALUE};
+            int[] cellBytes = {1, 1, 2, 4, 4};
+            for (int i = 0; i < extremes.length; i++) {
+                Map map = new Map(MapBenchmark.randomBoard(new java.util.Random(i), 7, 5, 0.3));
+                map.setPixel(6, 4, extremes[i]);
+                map.setCyclic(i % 2 == 0);
+                MapFile.write(map, file);
+                assertEquals(20 + 35 * cellBytes[i], Files.size(file));
+
+                Map read = MapFile.read(file);
+                assertEquals(map.isCyclic(), read.isCyclic());
+                assertArrayEquals(map.getMap(), read.getMap());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test 2: Old serialized maps
+     * An int[][] written with ObjectOutputStream (like test.bit) converts to the same map.
+     */
+    @Test
+    void testReadSerialized() throws IOException {
+        Path file = Files.createTempFile("map", ".bit");
+        try {
+            int[][] board = {{1, 1, 1}, {1, 0, 4}, {1, 5, 1}, {1, 1, 1}};
+            try (OutputStream out = Files.newOutputStream(file); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(board);
+            }
+            assertArrayEquals(board, MapFile.readSerialized(file).getMap());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test 3: Bad files
+     */
+    @Test
+    void testBadFiles() throws IOException {
+        Path file = Files.createTempFile("map", MapFile.EXTENSION);
+        try {
+            Files.write(file, new byte[]{1, 2, 3});
+            assertThrows(RuntimeException.class, () -> MapFile.read(file));
+            MapFile.write(new Map(4, 4, 0), file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 1));
+            assertThrows(RuntimeException.class, () -> MapFile.read(file));
+            assertThrows(RuntimeException.class, () -> MapFile.read(file.resolveSibling("missing" + MapFile.EXTENSION)));
+            assertThrows(RuntimeException.class, () -> MapFile.readSerialized(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
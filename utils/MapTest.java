@@ -1,5 +1,7 @@
 package assignments.Ex3.utils;
 
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -112,4 +114,756 @@ public class MapTest {
         assertNotNull(path);
         assertEquals(1, path.length, "Path to self should be length 1 (just the start node)");
     }
+
+    /**
+     * Test 6: All Distances
+     * Distances on a non-cyclic board with a wall, and -1 for walled-in cells.
+     */
+    @Test
+    void testAllDistance() {
+        int[][] board = new int[5][5];
+        board[2][0] = 1; board[2][1] = 1; board[2][2] = 1; board[2][3] = 1;
+
+        Map map = new Map(board);
+        map.setCyclic(false);
+        Map2D dist = map.allDistance(new Index2D(0, 0), 1);
+
+        assertEquals(0, dist.getPixel(0, 0));
+        assertEquals(4, dist.getPixel(0, 4), "Straight down the first column");
+        assertEquals(12, dist.getPixel(4, 0), "Must go around the wall through y=4");
+        assertEquals(-1, dist.getPixel(2, 1), "Walls are not reachable");
+    }
+
+    /**
+     * Test 7: Flood Fill
+     * Fills one side of a wall and checks the returned count and the untouched side.
+     */
+    @Test
+    void testFill() {
+        int[][] board = new int[4][3];
+        board[1][0] = 1; board[1][1] = 1; board[1][2] = 1;
+
+        Map map = new Map(board);
+        map.setCyclic(false);
+        int filled = map.fill(new Index2D(0, 0), 7);
+
+        assertEquals(3, filled, "Only the column left of the wall is filled");
+        assertEquals(7, map.getPixel(0, 2));
+        assertEquals(0, map.getPixel(2, 2), "The other side of the wall is untouched");
+
+        map.setCyclic(true);
+        assertEquals(6, map.fill(new Index2D(3, 1), 7), "In a cyclic map x=3 wraps to x=0");
+        assertEquals(0, map.fill(new Index2D(3, 1), 7), "Same color - nothing to fill");
+    }
+
+    /**
+     * Test 8: Multi-Source Distances
+     * Two sources on a cyclic row: every cell gets the distance (and label) of the nearest one.
+     */
+    @Test
+    void testMultiSourceDistance() {
+        int[][] board = new int[10][1];
+        board[5][0] = 1; // Wall
+
+        Map map = new Map(board);
+        Pixel2D[] sources = { new Index2D(1, 0), new Index2D(7, 0), new Index2D(5, 0) };
+        Map nearest = new Map(10, 1, 0);
+        Map2D dist = map.allDistance(sources, 1, nearest);
+
+        assertEquals(0, dist.getPixel(7, 0));
+        assertEquals(2, dist.getPixel(3, 0), "(3,0) is 2 steps from the first source");
+        assertEquals(0, nearest.getPixel(3, 0));
+        assertEquals(1, dist.getPixel(8, 0), "(8,0) is 1 step from the second source");
+        assertEquals(1, nearest.getPixel(8, 0));
+        assertEquals(1, dist.getPixel(0, 0), "(0,0) is next to the first source");
+        assertEquals(-1, dist.getPixel(5, 0), "A source on a wall is ignored");
+        assertEquals(-1, nearest.getPixel(5, 0));
+
+        // A skipped source does not shift the labels of the ones after it.
+        int[][] row = new int[5][1];
+        row[0][0] = 1;
+        Map line = new Map(row);
+        Map lineNearest = new Map(5, 1, 0);
+        line.allDistance(new Pixel2D[]{ new Index2D(0, 0), new Index2D(4, 0) }, 1, lineNearest);
+        for (int x = 1; x < 5; x++) assertEquals(1, lineNearest.getPixel(x, 0), "Labels are positions in sources");
+        assertEquals(-1, lineNearest.getPixel(0, 0));
+    }
+
+    /**
+     * Test 9: Nearest Target With Bonus
+     * A coin 1 step away loses to an apple 3 steps away when the apple bonus is 5,
+     * and wins without the bonus.
+     */
+    @Test
+    void testNearestPath() {
+        int[][] board = new int[7][7];
+        board[3][2] = 4; // Coin, 1 step
+        board[6][3] = 5; // Apple, 3 steps
+        Map map = new Map(board);
+        map.setCyclic(false);
+        Pixel2D start = new Index2D(3, 3);
+
+        Pixel2D[] closest = map.nearestPath(start, new int[]{4, 5}, 1);
+        assertNotNull(closest);
+        assertEquals(2, closest.length);
+        assertEquals(4, map.getPixel(closest[1]), "Without a bonus the closest coin wins");
+
+        Pixel2D[] best = map.nearestPath(start, v -> v >= 4, v -> (v == 5) ? 5 : 0, 5, 1);
+        assertNotNull(best);
+        assertEquals(4, best.length, "Path to the apple is 3 steps long");
+        assertEquals(5, map.getPixel(best[best.length - 1]), "The apple bonus beats the closer coin");
+
+        assertNull(map.nearestPath(start, v -> v == 9, 1), "No target - no path");
+    }
+
+    /**
+     * Test 10: Reused Search Buffers
+     * Back-to-back searches on maps of different sizes share one workspace,
+     * and a nested search gets its own.
+     */
+    @Test
+    void testSearchWorkspaceReuse() {
+        Map big = new Map(30, 30, 0);
+        Map small = new Map(new int[5][5]);
+        Pixel2D a = new Index2D(0, 0);
+
+        assertEquals(31, big.shortestPath(a, new Index2D(15, 15), 1).length, "30x30 cyclic: 15+15 steps");
+        assertEquals(3, small.shortestPath(a, new Index2D(1, 1), 1).length, "Buffers from the big map are reused");
+        assertEquals(3, small.shortestPath(a, new Index2D(4, 4), 1).length, "Cells marked by the previous search are ignored");
+
+        SearchWorkspace outer = SearchWorkspace.acquire(10);
+        SearchWorkspace nested = SearchWorkspace.acquire(10);
+        assertNotSame(outer, nested, "A nested search must not share the busy workspace");
+        nested.release();
+        outer.release();
+        SearchWorkspace again = SearchWorkspace.acquire(10);
+        assertSame(outer, again, "The thread's workspace is handed out again once released");
+        assertFalse(again.isMarked(3), "A new search starts with no marked cell");
+        again.release();
+    }
+
+    /**
+     * Test 11: Search Strategies Agree With BFS
+     * On random boards (cyclic and not), A* and bidirectional BFS must find valid paths
+     * of exactly the BFS length, and fail exactly when BFS fails.
+     */
+    @Test
+    void testPathStrategiesMatchBfs() {
+        java.util.Random rnd = new java.util.Random(5);
+        for (int round = 0; round < 40; round++) {
+            Map map = new Map(MapBenchmark.randomBoard(rnd, 5 + rnd.nextInt(30), 5 + rnd.nextInt(30), 0.3));
+            map.setCyclic(round % 2 == 0);
+            for (int q = 0; q < 20; q++) {
+                Pixel2D a = new Index2D(rnd.nextInt(map.getWidth()), rnd.nextInt(map.getHeight()));
+                Pixel2D b = new Index2D(rnd.nextInt(map.getWidth()), rnd.nextInt(map.getHeight()));
+                Pixel2D[] bfs = map.shortestPath(a, b, 1, PathStrategy.BFS);
+                for (PathStrategy strategy : PathStrategy.values()) {
+                    Pixel2D[] path = map.shortestPath(a, b, 1, strategy);
+                    if (bfs == null) {
+                        assertNull(path, strategy + " found a path BFS did not");
+                    } else {
+                        assertNotNull(path, strategy + " missed a path");
+                        assertEquals(bfs.length, path.length, strategy + " path is not the shortest");
+                        assertValidPath(map, path, a, b, 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test 12: Jump Point Search
+     * On random open and cluttered boards JPS finds paths of the BFS length, and on an
+     * empty board it expands only a handful of jump points.
+     */
+    @Test
+    void testJumpPointSearch() {
+        java.util.Random rnd = new java.util.Random(11);
+        for (int round = 0; round < 20; round++) {
+            double walls = (round < 10) ? 0.05 : 0.25;
+            Map map = new Map(MapBenchmark.randomBoard(rnd, 40 + rnd.nextInt(40), 40 + rnd.nextInt(40), walls));
+            map.setCyclic(round % 2 == 0);
+            for (int q = 0; q < 20; q++) {
+                Pixel2D a = new Index2D(rnd.nextInt(map.getWidth()), rnd.nextInt(map.getHeight()));
+                Pixel2D b = new Index2D(rnd.nextInt(map.getWidth()), rnd.nextInt(map.getHeight()));
+                Pixel2D[] bfs = map.shortestPath(a, b, 1, PathStrategy.BFS);
+                Pixel2D[] jps = map.shortestPath(a, b, 1, PathStrategy.JUMP_POINT);
+                if (bfs == null) {
+                    assertNull(jps);
+                } else {
+                    assertNotNull(jps);
+                    assertEquals(bfs.length, jps.length);
+                    assertValidPath(map, jps, a, b, 1);
+                }
+            }
+        }
+        // On an empty board JPS only expands a handful of jump points.
+        Map open = new Map(100, 100, 0);
+        open.setCyclic(false);
+        Pixel2D[] path = open.shortestPath(new Index2D(3, 5), new Index2D(90, 80), 1, PathStrategy.JUMP_POINT);
+        assertEquals(87 + 75 + 1, path.length);
+        int jpsExpanded = open.getLastExpandedCount();
+        open.shortestPath(new Index2D(3, 5), new Index2D(90, 80), 1, PathStrategy.BFS);
+        assertTrue(jpsExpanded * 100 < open.getLastExpandedCount(), "JPS expanded " + jpsExpanded);
+    }
+
+    /**
+     * Test 13: Walkable Mask
+     * On random boards with heights around the 64-bit word size, the bit-packed BFS gives the
+     * same distances and reachable sets as allDistance, and the bit-packed fill respects walls.
+     */
+    @Test
+    void testWalkableMask() {
+        java.util.Random rnd = new java.util.Random(7);
+        int[] heights = {1, 5, 63, 64, 65, 130};
+        for (int round = 0; round < 24; round++) {
+            int w = 1 + rnd.nextInt(40), h = heights[round % heights.length];
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.3));
+            map.setCyclic(round % 4 < 2);
+            WalkableMask mask = map.walkableMask(1);
+            for (int q = 0; q < 5; q++) {
+                Pixel2D start = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Map2D dist = map.allDistance(start, 1);
+                WalkableMask reached = mask.reachableFrom(start);
+                int[] bits = new int[w * h];
+                Arrays.fill(bits, -1);
+                if (map.getPixel(start) != 1) mask.distances(new int[]{start.getX() * h + start.getY()}, 1, bits);
+                int count = 0;
+                for (int x = 0; x < w; x++) {
+                    for (int y = 0; y < h; y++) {
+                        assertEquals(dist.getPixel(x, y), bits[x * h + y], "distance at " + x + "," + y);
+                        assertEquals(dist.getPixel(x, y) != -1, reached.contains(x, y), "reachable at " + x + "," + y);
+                        if (dist.getPixel(x, y) != -1) count++;
+                    }
+                }
+                assertEquals(count, reached.count());
+            }
+        }
+        // Large enough for the bit-packed fill: a 100x100 board split by a wall column.
+        Map big = new Map(100, 100, 0);
+        big.setCyclic(false);
+        for (int y = 0; y < 100; y++) big.setPixel(40, y, 1);
+        assertEquals(40 * 100, big.fill(new Index2D(3, 3), 2));
+        assertEquals(0, big.getPixel(41, 0));
+        assertEquals(59 * 100, big.fill(new Index2D(41, 0), 2));
+        big.setCyclic(true); // Now both sides meet around the x border.
+        assertEquals(99 * 100, big.fill(new Index2D(3, 3), 5));
+    }
+
+    /**
+     * Test 14: Scanline Flood Fill
+     * On random boards (cyclic and not) the fill paints exactly the region reachable from the
+     * start through its own value, and returns its size.
+     */
+    @Test
+    void testScanlineFill() {
+        java.util.Random rnd = new java.util.Random(9);
+        for (int round = 0; round < 40; round++) {
+            int w = 1 + rnd.nextInt(60), h = 1 + rnd.nextInt(60);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.1 + rnd.nextDouble() * 0.4));
+            map.setCyclic(round % 2 == 0);
+            Pixel2D p = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+            WalkableMask region = WalkableMask.ofColor(map, map.getPixel(p)).reachableFrom(p);
+            int[][] before = map.getMap();
+            assertEquals(region.count(), map.fill(p, 7));
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    assertEquals(region.contains(x, y) ? 7 : before[x][y], map.getPixel(x, y), "cell " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test 15: Parallel Multi-Source BFS
+     * With thousands of sources (wide frontiers) and with one, the level-parallel BFS gives the
+     * same distance field as the sequential one.
+     */
+    @Test
+    void testParallelBfs() {
+        java.util.Random rnd = new java.util.Random(11);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 8; round++) {
+                int w = 100 + rnd.nextInt(200), h = 100 + rnd.nextInt(200);
+                Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.2));
+                map.setCyclic(round % 2 == 0);
+                // Many sources give frontiers above ParallelBfs.MIN_PARALLEL_LEVEL.
+                int count = (round < 6) ? 2000 : 1;
+                Pixel2D[] sources = new Pixel2D[count];
+                int[] src = new int[count];
+                int walkable = 0;
+                for (int i = 0; i < count; i++) {
+                    sources[i] = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                    if (map.getPixel(sources[i]) != 1) src[walkable++] = sources[i].getX() * h + sources[i].getY();
+                }
+                Map2D expected = map.allDistance(sources, 1);
+                int[] dist = new int[w * h];
+                Arrays.fill(dist, -1);
+                ParallelBfs.distances(map, src, walkable, 1, dist, pool);
+                for (int x = 0; x < w; x++) {
+                    for (int y = 0; y < h; y++) {
+                        assertEquals(expected.getPixel(x, y), dist[x * h + y], "distance at " + x + "," + y);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test 16: Component Index
+     * After random wall and coin changes (and cyclic flips) the incrementally kept index agrees
+     * with a fresh reachability search: connectivity, component sizes and coin counts.
+     */
+    @Test
+    void testComponentIndex() {
+        java.util.Random rnd = new java.util.Random(13);
+        for (int round = 0; round < 20; round++) {
+            int w = 1 + rnd.nextInt(30), h = 1 + rnd.nextInt(30);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.4));
+            map.setCyclic(round % 2 == 0);
+            ComponentIndex index = map.components(1, 4);
+            assertSame(index, map.components(1, 4));
+            for (int step = 0; step < 40; step++) {
+                int[] values = {0, 1, 4};
+                map.setPixel(rnd.nextInt(w), rnd.nextInt(h), values[rnd.nextInt(values.length)]);
+                if (step % 10 == 9) map.setCyclic(!map.isCyclic());
+                Pixel2D p = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                WalkableMask region = map.reachable(p, 1);
+                int coins = 0;
+                for (int x = 0; x < w; x++) {
+                    for (int y = 0; y < h; y++) {
+                        Pixel2D q = new Index2D(x, y);
+                        assertEquals(region.contains(x, y), index.connected(p, q), p + " ~ " + q);
+                        if (region.contains(x, y) && map.getPixel(q) == 4) coins++;
+                    }
+                }
+                assertEquals(region.count(), index.componentSize(p));
+                assertEquals(coins, index.count(p, 4));
+            }
+            Map2D labels = index.toMap();
+            int max = -1;
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) max = Math.max(max, labels.getPixel(x, y));
+            }
+            assertEquals(index.componentCount(), max + 1);
+        }
+        Map open = new Map(10, 10, 0);
+        ComponentIndex index = open.components(1);
+        assertEquals(1, index.componentCount());
+        for (int y = 0; y < 10; y++) open.setPixel(4, y, 1);
+        assertEquals(1, index.componentCount(), "joined around the cyclic border");
+        open.setCyclic(false);
+        assertEquals(2, index.componentCount());
+        open.setPixel(4, 7, 0);
+        assertEquals(1, index.componentCount());
+        assertEquals(-1, index.label(new Index2D(4, 0)));
+        assertEquals(0, index.componentSize(new Index2D(4, 0)));
+        assertFalse(index.connected(new Index2D(0, 0), new Index2D(10, 0)));
+        assertThrows(RuntimeException.class, () -> index.count(new Index2D(0, 0), 4));
+        assertThrows(RuntimeException.class, () -> open.components(1, 4, 4));
+        assertNotSame(index, open.components(1, 4));
+    }
+
+    /**
+     * Test 17: Bulk Operations
+     * The copy constructor, count and replace on a board with every value in [-1,5].
+     */
+    @Test
+    void testBulkOps() {
+        java.util.Random rnd = new java.util.Random(17);
+        int[][] board = new int[37][29];
+        for (int[] col : board) {
+            for (int y = 0; y < col.length; y++) col[y] = rnd.nextInt(6) - 1;
+        }
+        Map map = new Map(board);
+        map.setCyclic(false);
+        Map copy = new Map(map);
+        assertArrayEquals(board, copy.getMap());
+        assertFalse(copy.isCyclic());
+        copy.setPixel(0, 0, 9);
+        assertEquals(board[0][0], map.getPixel(0, 0), "the copy must not share cells");
+
+        for (int v = -1; v <= 5; v++) {
+            int expected = 0;
+            for (int[] col : board) {
+                for (int c : col) if (c == v) expected++;
+            }
+            assertEquals(expected, map.count(v));
+        }
+        int fours = map.count(4);
+        assertEquals(fours, map.replace(4, Integer.MIN_VALUE));
+        assertEquals(0, map.count(4));
+        assertEquals(fours, map.count(Integer.MIN_VALUE));
+        assertEquals(fours, map.replace(Integer.MIN_VALUE, 4));
+        assertArrayEquals(board, map.getMap());
+        assertEquals(0, map.replace(3, 3));
+        assertThrows(RuntimeException.class, () -> new Map((Map) null));
+    }
+
+    /**
+     * Test 18: Copy-On-Write Forks
+     * Random writes to a map, its fork and a fork of the fork stay independent, searches read
+     * through the copied tiles, and bulk writes copy the storage first.
+     */
+    @Test
+    void testFork() {
+        java.util.Random rnd = new java.util.Random(18);
+        int[][] board = MapBenchmark.randomBoard(rnd, 45, 33, 0.3);
+        Map map = new Map(board);
+        map.setCyclic(false);
+        map.setPathStrategy(PathStrategy.A_STAR);
+        Map fork = map.fork();
+        assertArrayEquals(board, fork.getMap());
+        assertFalse(fork.isCyclic());
+        assertEquals(PathStrategy.A_STAR, fork.getPathStrategy());
+        assertEquals(PathStrategy.A_STAR, new Map(map).getPathStrategy(), "a copy keeps the strategy like a fork");
+        Map forkOfFork = fork.fork();
+        int[][] expectedMap = map.getMap(), expectedFork = fork.getMap(), expectedFork2 = forkOfFork.getMap();
+        Map[] maps = {map, fork, forkOfFork};
+        int[][][] expected = {expectedMap, expectedFork, expectedFork2};
+        for (int step = 0; step < 600; step++) {
+            int m = rnd.nextInt(3), x = rnd.nextInt(45), y = rnd.nextInt(33), v = rnd.nextInt(6);
+            maps[m].setPixel(x, y, v);
+            expected[m][x][y] = v;
+            if (step == 300) { // A fork taken after writes sees them, and shares the written tiles.
+                maps[2] = maps[1].fork();
+                expected[2] = maps[1].getMap();
+            }
+        }
+        for (int m = 0; m < 3; m++) {
+            assertArrayEquals(expected[m], maps[m].getMap());
+            int walls = 0;
+            for (int[] col : expected[m]) {
+                for (int c : col) if (c == 1) walls++;
+            }
+            assertEquals(walls, maps[m].count(1));
+            assertArrayEquals(new Map(expected[m]).getMap(), new Map(maps[m]).getMap());
+        }
+        // Searches read through the tiles.
+        Map plain = new Map(expected[1]);
+        plain.setCyclic(false);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(44, 32);
+        assertArrayEquals(plain.allDistance(a, 1).getMap(), maps[1].allDistance(a, 1).getMap());
+        assertEquals(plain.reachable(a, 1).count(), maps[1].reachable(a, 1).count());
+        Pixel2D[] path = maps[1].shortestPath(a, b, 1);
+        Pixel2D[] expectedPath = plain.shortestPath(a, b, 1);
+        assertEquals(expectedPath == null, path == null);
+        if (path != null) assertEquals(expectedPath.length, path.length);
+        // Bulk writes copy the storage first.
+        int fours = maps[1].count(4);
+        assertEquals(fours, maps[1].replace(4, 7));
+        assertEquals(0, maps[1].count(4));
+        assertArrayEquals(expected[0], maps[0].getMap());
+        assertArrayEquals(expected[2], maps[2].getMap());
+        maps[2].fill(a, 8);
+        assertArrayEquals(expected[0], maps[0].getMap());
+    }
+
+    /**
+     * Test 19: Packed Coordinates
+     * pack/unpack round-trips (extreme values included), Index2D equality and hashing,
+     * and the packed accessors of Map.
+     */
+    @Test
+    void testPackedCoordinates() {
+        int[] values = {0, 1, -1, 7, 1000, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        java.util.HashSet<Long> packed = new java.util.HashSet<>();
+        for (int x : values) {
+            for (int y : values) {
+                long xy = Index2D.pack(x, y);
+                assertEquals(x, Index2D.unpackX(xy));
+                assertEquals(y, Index2D.unpackY(xy));
+                assertEquals(xy, new Index2D(x, y).pack());
+                assertEquals(new Index2D(x, y), new Index2D(xy));
+                assertTrue(packed.add(xy), "packed values must be distinct");
+            }
+        }
+        java.util.HashSet<Pixel2D> set = new java.util.HashSet<>();
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) assertTrue(set.add(new Index2D(x, y)));
+        }
+        assertTrue(set.contains(new Index2D(3, 4)));
+        assertFalse(set.contains(new Index2D(3, 20)));
+        assertEquals(new Index2D(3, 4).hashCode(), new Index2D(new Index2D(3, 4)).hashCode());
+        assertNotEquals(new Index2D(3, 4), new Index2D(4, 3));
+        assertNotEquals(new Index2D(3, 4), "3,4");
+
+        Map map = new Map(5, 4, 0);
+        map.setPixel(Index2D.pack(2, 3), 9);
+        assertEquals(9, map.getPixel(2, 3));
+        assertEquals(9, map.getPixel(Index2D.pack(2, 3)));
+        assertTrue(map.isInside(Index2D.pack(4, 3)));
+        assertFalse(map.isInside(Index2D.pack(5, 0)));
+        assertFalse(map.isInside(Index2D.pack(0, -1)));
+        assertThrows(RuntimeException.class, () -> map.getPixel(Index2D.pack(-1, 0)));
+    }
+
+    /**
+     * Test 20: Compact Paths
+     * The compact path has the length and cells of shortestPath for both the BFS and the A*
+     * strategies, and a single wrapping step on a cyclic map.
+     */
+    @Test
+    void testCompactPath() {
+        java.util.Random rnd = new java.util.Random(20);
+        for (int round = 0; round < 40; round++) {
+            int w = 1 + rnd.nextInt(25), h = 1 + rnd.nextInt(25);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.3));
+            map.setCyclic(round % 2 == 0);
+            map.setPathStrategy(round % 4 < 2 ? PathStrategy.BFS : PathStrategy.A_STAR);
+            Pixel2D a = new Index2D(rnd.nextInt(w), rnd.nextInt(h)), b = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+            Pixel2D[] expected = map.shortestPath(a, b, 1);
+            CompactPath path = map.compactPath(a, b, 1);
+            if (expected == null) {
+                assertNull(path);
+                continue;
+            }
+            assertEquals(expected.length, path.length());
+            Pixel2D[] cells = path.toArray();
+            assertValidPath(map, cells, a, b, 1);
+            assertEquals(a, path.getStart());
+            assertEquals(b, path.getEnd());
+            assertEquals(cells[Math.min(1, cells.length - 1)], path.nextCell());
+            int k = 0;
+            for (Pixel2D p : path) assertEquals(cells[k], path.get(k++));
+            assertEquals(path.length(), k);
+            if (path.length() == 1) assertEquals(-1, path.firstStep());
+            else assertEquals(path.getStep(0), path.firstStep());
+            assertArrayEquals(cells, CompactPath.of(cells, w, h).toArray());
+        }
+        Map open = new Map(5, 3, 0);
+        CompactPath wrap = open.compactPath(new Index2D(0, 1), new Index2D(4, 1), 1);
+        assertEquals(2, wrap.length());
+        assertEquals(1, wrap.firstStep());
+        assertEquals(new Index2D(4, 1), wrap.nextCell());
+        assertThrows(RuntimeException.class, () -> wrap.get(2));
+        open.setPixel(2, 0, 1);
+        open.setPixel(2, 1, 1);
+        open.setPixel(2, 2, 1);
+        open.setCyclic(false);
+        assertNull(open.compactPath(new Index2D(0, 1), new Index2D(4, 1), 1));
+    }
+
+    /**
+     * Test 21: Neighbor Table
+     * The table follows random cell changes and cyclic flips, and searches through it give the
+     * same paths and distances as on a map without one.
+     */
+    @Test
+    void testNeighborTable() {
+        java.util.Random rnd = new java.util.Random(21);
+        for (int round = 0; round < 20; round++) {
+            int w = 1 + rnd.nextInt(20), h = 1 + rnd.nextInt(20);
+            int[][] board = MapBenchmark.randomBoard(rnd, w, h, 0.3);
+            Map map = new Map(board), plain = new Map(board);
+            map.setCyclic(round % 2 == 0);
+            plain.setCyclic(round % 2 == 0);
+            NeighborTable table = map.neighborTable(1);
+            assertSame(table, map.neighborTable(1));
+            for (int step = 0; step < 30; step++) {
+                int x = rnd.nextInt(w), y = rnd.nextInt(h), v = rnd.nextInt(3);
+                map.setPixel(x, y, v);
+                plain.setPixel(x, y, v);
+                if (step == 15) {
+                    map.setCyclic(!map.isCyclic());
+                    plain.setCyclic(!plain.isCyclic());
+                }
+                for (int cx = 0; cx < w; cx++) {
+                    for (int cy = 0; cy < h; cy++) {
+                        int open = table.openDirections(cx, cy);
+                        for (int d = 0; d < 4; d++) {
+                            int nx = cx + Map.DX[d], ny = cy + Map.DY[d];
+                            if (map.isCyclic()) { nx = (nx + w) % w; ny = (ny + h) % h; }
+                            boolean expected = nx >= 0 && nx < w && ny >= 0 && ny < h && map.getPixel(nx, ny) != 1;
+                            assertEquals(expected, (open & (1 << d)) != 0, cx + "," + cy + " d=" + d);
+                            Pixel2D next = table.step(new Index2D(cx, cy), d);
+                            assertEquals(expected ? new Index2D(nx, ny) : null, next);
+                        }
+                    }
+                }
+                Pixel2D a = new Index2D(rnd.nextInt(w), rnd.nextInt(h)), b = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+                Pixel2D[] expectedPath = plain.shortestPath(a, b, 1), path = map.shortestPath(a, b, 1);
+                if (expectedPath == null) assertNull(path);
+                else assertArrayEquals(expectedPath, path, "same neighbor order, same path");
+                assertArrayEquals(plain.allDistance(a, 1).getMap(), map.allDistance(a, 1).getMap());
+            }
+        }
+        Map map = new Map(4, 4, 0);
+        NeighborTable table = map.neighborTable(1);
+        assertEquals(0xF, table.openDirections(0, 0));
+        map.fill(new Index2D(0, 0), 1);
+        assertEquals(0, table.openDirections(0, 0), "bulk changes rebuild the table");
+        assertEquals(0, table.openDirections(4, 0));
+        assertNull(table.step(null, 0));
+        assertNotSame(table, map.neighborTable(2));
+    }
+
+    /**
+     * Test 22: One-To-Many Shortest Paths
+     * One search gives the shortestPath length to every target (duplicates and the source
+     * included), and each first step leads one move closer to its target.
+     */
+    @Test
+    void testShortestPaths() {
+        java.util.Random rnd = new java.util.Random(22);
+        for (int round = 0; round < 30; round++) {
+            int w = 1 + rnd.nextInt(25), h = 1 + rnd.nextInt(25);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.3));
+            map.setCyclic(round % 2 == 0);
+            Pixel2D src = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+            Pixel2D[] targets = new Pixel2D[1 + rnd.nextInt(6)];
+            for (int j = 0; j < targets.length; j++) {
+                targets[j] = (j > 0 && rnd.nextInt(5) == 0) ? targets[j - 1] : new Index2D(rnd.nextInt(w + 1), rnd.nextInt(h));
+            }
+            if (round % 5 == 0) targets[0] = src;
+            int[] firstSteps = new int[targets.length];
+            int[] dist = map.shortestPaths(src, targets, 1, firstSteps);
+            assertArrayEquals(dist, map.shortestPaths(src, targets, 1));
+            for (int j = 0; j < targets.length; j++) {
+                Pixel2D[] path = map.isInside(targets[j]) ? map.shortestPath(src, targets[j], 1) : null;
+                assertEquals(path == null ? -1 : path.length - 1, dist[j], src + " -> " + targets[j]);
+                if (dist[j] <= 0) {
+                    assertEquals(-1, firstSteps[j]);
+                    continue;
+                }
+                // The first step leads to a cell one move closer to the target.
+                Pixel2D next = map.neighborTable(1).step(src, firstSteps[j]);
+                assertNotNull(next);
+                assertEquals(dist[j] - 1, map.shortestPaths(next, new Pixel2D[]{targets[j]}, 1)[0]);
+            }
+        }
+        Map map = new Map(3, 3, 0);
+        assertArrayEquals(new int[0], map.shortestPaths(new Index2D(0, 0), new Pixel2D[0], 1));
+        assertThrows(RuntimeException.class, () -> map.shortestPaths(new Index2D(0, 0), null, 1));
+        assertThrows(RuntimeException.class, () -> map.shortestPaths(new Index2D(0, 0), new Pixel2D[2], 1, new int[2]));
+        assertThrows(RuntimeException.class, () -> map.shortestPaths(new Index2D(0, 0), new Pixel2D[]{new Index2D(1, 1)}, 1, new int[0]));
+    }
+
+    /**
+     * Test 23: Depth-Limited Search
+     * The sparse ball and distanceWithin agree with allDistance up to the limit and report -1
+     * beyond it, with the cells kept in BFS order.
+     */
+    @Test
+    void testDepthLimitedSearch() {
+        java.util.Random rnd = new java.util.Random(24);
+        for (int round = 0; round < 30; round++) {
+            int w = 1 + rnd.nextInt(25), h = 1 + rnd.nextInt(25);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.3));
+            map.setCyclic(round % 2 == 0);
+            Pixel2D start = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+            int maxDepth = rnd.nextInt(8);
+            Map2D full = map.allDistance(start, 1);
+            SparseDistances ball = map.allDistance(start, 1, maxDepth);
+            assertEquals(maxDepth, ball.getMaxDepth());
+            int inside = 0;
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    int d = full.getPixel(x, y);
+                    int expected = (d >= 0 && d <= maxDepth && map.getPixel(start) != 1) ? d : -1;
+                    if (expected >= 0) inside++;
+                    Pixel2D p = new Index2D(x, y);
+                    assertEquals(expected, ball.getDistance(p), start + " -> " + p);
+                    assertEquals(expected, map.distanceWithin(start, p, 1, maxDepth));
+                }
+            }
+            assertEquals(inside, ball.size());
+            for (int k = 0; k < ball.size(); k++) {
+                assertEquals(ball.getCellDistance(k), ball.getDistance(ball.getCell(k)));
+                if (k > 0) assertTrue(ball.getCellDistance(k - 1) <= ball.getCellDistance(k));
+            }
+            assertEquals(-1, ball.getDistance(w, 0));
+            assertEquals(-1, ball.getDistance(-1, 0));
+            assertFalse(ball.contains(null));
+        }
+        Map open = new Map(1000, 1000, 0);
+        SparseDistances ball = open.allDistance(new Index2D(500, 500), 1, 3);
+        assertEquals(25, ball.size(), "a diamond of radius 3");
+        assertEquals(3, open.distanceWithin(new Index2D(0, 0), new Index2D(999, 998), 1, 3));
+        assertEquals(-1, open.distanceWithin(new Index2D(0, 0), new Index2D(500, 500), 1, 3));
+        assertThrows(RuntimeException.class, () -> open.allDistance(new Index2D(0, 0), 1, -1));
+    }
+
+    /**
+     * Test 24: Generic Traversal
+     * CONTINUE visits every reachable cell once at its BFS distance, PRUNE at a radius gives the
+     * depth-limited ball, STOP returns its cell, and several starts with a custom predicate
+     * give the distance to the nearest start.
+     */
+    @Test
+    void testTraverse() {
+        java.util.Random rnd = new java.util.Random(25);
+        for (int round = 0; round < 20; round++) {
+            int w = 5 + rnd.nextInt(20), h = 5 + rnd.nextInt(20);
+            Map map = new Map(MapBenchmark.randomBoard(rnd, w, h, 0.3));
+            map.setCyclic(rnd.nextBoolean());
+            if (rnd.nextBoolean()) map.neighborTable(1);
+            Pixel2D start = new Index2D(rnd.nextInt(w), rnd.nextInt(h));
+            map.setPixel(start, 0);
+            Map2D full = map.allDistance(start, 1);
+
+            // CONTINUE everywhere: every reachable cell once, at its BFS distance, in BFS order.
+            int[] seen = new int[w * h], last = {0}, visits = {0};
+            Arrays.fill(seen, -1);
+            assertNull(map.traverse(start, 1, (x, y, depth) -> {
+                assertEquals(-1, seen[x * h + y], "visited twice");
+                assertTrue(depth >= last[0]);
+                seen[x * h + y] = last[0] = depth;
+                visits[0]++;
+                return CellVisitor.CONTINUE;
+            }));
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) assertEquals(full.getPixel(x, y), seen[x * h + y]);
+            }
+
+            // PRUNE at a radius is a depth-limited search; STOP returns the cell.
+            SparseDistances ball = map.allDistance(start, 1, 3);
+            int[] inBall = {0};
+            map.traverse(start, 1, (x, y, depth) -> {
+                inBall[0]++;
+                return depth < 3 ? CellVisitor.CONTINUE : CellVisitor.PRUNE;
+            });
+            assertEquals(ball.size(), inBall[0]);
+            int stopAt = rnd.nextInt(visits[0]);
+            int[] count = {0};
+            Pixel2D stop = map.traverse(start, 1, (x, y, depth) -> count[0]++ == stopAt ? CellVisitor.STOP : CellVisitor.CONTINUE);
+            assertEquals(stopAt + 1, count[0]);
+            assertEquals(full.getPixel(stop), seen[stop.getX() * h + stop.getY()]);
+        }
+
+        // Several starts and a custom predicate: the distance to the nearest start over the cells < 3.
+        Map map = new Map(new int[][]{{0, 0, 0, 0}, {2, 3, 5, 0}, {0, 0, 0, 0}});
+        map.setCyclic(false);
+        Pixel2D[] starts = {new Index2D(0, 0), new Index2D(2, 3), new Index2D(1, 2), null, new Index2D(9, 9)};
+        int[][] dist = new int[3][4];
+        for (int[] col : dist) Arrays.fill(col, -1);
+        assertNull(map.traverse(starts, v -> v < 3, (x, y, depth) -> {
+            dist[x][y] = depth;
+            return CellVisitor.CONTINUE;
+        }));
+        assertArrayEquals(new int[][]{{0, 1, 2, 2}, {1, -1, -1, 1}, {2, 2, 1, 0}}, dist);
+        assertEquals(new Index2D(1, 0), map.traverse(starts, v -> v < 3,
+                (x, y, depth) -> depth == 1 && x == 1 ? CellVisitor.STOP : CellVisitor.CONTINUE));
+        assertNull(map.traverse(new Index2D(1, 1), 3, (x, y, depth) -> CellVisitor.STOP));
+        assertThrows(RuntimeException.class, () -> map.traverse(new Index2D(0, 0), 1, null));
+        assertThrows(RuntimeException.class, () -> map.traverse(starts, null, (x, y, depth) -> CellVisitor.CONTINUE));
+    }
+
+    /** Asserts that path goes from a to b in single (wrap-aware) steps and avoids obsColor. */
+    static void assertValidPath(Map map, Pixel2D[] path, Pixel2D a, Pixel2D b, int obsColor) {
+        assertEquals(a, path[0], "Path must start at the start point");
+        assertEquals(b, path[path.length - 1], "Path must end at the target");
+        int w = map.getWidth(), h = map.getHeight();
+        for (int i = 0; i < path.length; i++) {
+            assertNotEquals(obsColor, map.getPixel(path[i]), "Path crosses an obstacle");
+            if (i == 0) continue;
+            int dx = Math.abs(path[i].getX() - path[i - 1].getX());
+            int dy = Math.abs(path[i].getY() - path[i - 1].getY());
+            if (map.isCyclic()) { dx = Math.min(dx, w - dx); dy = Math.min(dy, h - dy); }
+            assertEquals(1, dx + dy, "Consecutive path pixels must be neighbors");
+        }
+    }
 }
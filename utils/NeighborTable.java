@@ -0,0 +1,157 @@
+package assignments.Ex3.utils;
+
+/**
+ * The moves out of every cell of a {@link Map} for one obstacle value, one byte per cell,
+ * so a search step is a table lookup instead of a division, a border check and a cell read:
+ * 1. Bits 0-3: bit d is set iff the neighbor in direction d (the order of {@link Map#DX}/{@link Map#DY}:
+ *    y-1, x-1, y+1, x+1) exists and is not an obstacle.
+ * 2. Bits 4-7: bit 4+d is set iff that move wraps around the border of a cyclic map.
+ * The neighbor of flat index i in direction d is then
+ * {@code i + offset[d] + ((code >>> (4 + d)) & 1) * wrapOffset[d]}.
+ *
+ * The table belongs to its map (see {@link Map#neighborTable(int)}) and follows its changes:
+ * a cell that becomes (or stops being) an obstacle updates one bit of each of its 4 neighbors.
+ * Fill, replace, init and setCyclic mark it stale, and the next use rebuilds it (one sweep).
+ */
+public final class NeighborTable {
+    private final Map _map;
+    private final int _obs;
+    private byte[] _codes = new byte[0];
+    /** Flat index step of each direction, and the correction added when it wraps. */
+    private final int[] _offset = new int[4], _wrapOffset = new int[4];
+    private boolean _stale = true;
+
+    /**
+     * @param map the map (read again whenever the table is stale)
+     * @param obsColor obstacle value
+     */
+    NeighborTable(Map map, int obsColor) {
+        _map = map;
+        _obs = obsColor;
+    }
+
+    /**
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return the open directions of (x,y): bit d is set iff the move in direction d (0..3)
+     * stays on the map and does not enter an obstacle; 0 outside the map
+     */
+    public int openDirections(int x, int y) {
+        refresh();
+        if (!inside(x, y)) return 0;
+        return _codes[_map.index(x, y)] & 0xF;
+    }
+
+    /**
+     * @param p pixel
+     * @param d direction 0..3 (y-1, x-1, y+1, x+1)
+     * @return the neighbor of p in direction d, or null if that move is blocked or leaves the map
+     */
+    public Pixel2D step(Pixel2D p, int d) {
+        if (p == null) return null;
+        refresh();
+        int x = p.getX(), y = p.getY();
+        if (!inside(x, y) || (_codes[_map.index(x, y)] & (1 << d)) == 0) return null;
+        int w = _map.getWidth(), h = _map.getHeight();
+        int nx = x + Map.DX[d], ny = y + Map.DY[d];
+        if (nx < 0) nx += w;
+        else if (nx >= w) nx -= w;
+        if (ny < 0) ny += h;
+        else if (ny >= h) ny -= h;
+        return new Index2D(nx, ny);
+    }
+
+    /**
+     * @return the obstacle value of this table
+     */
+    public int getObstacleColor() {
+        return _obs;
+    }
+
+    // ----------------- package-private access (used by the searches of Map) -----------------
+
+    /** @return the codes, rebuilt first if the table is stale (valid until the next change). */
+    byte[] codes() {
+        refresh();
+        return _codes;
+    }
+
+    /** @return the flat index step of each direction (valid with {@link #codes()}). */
+    int[] offsets() {
+        return _offset;
+    }
+
+    /** @return the correction added to a wrapping step (valid with {@link #codes()}). */
+    int[] wrapOffsets() {
+        return _wrapOffset;
+    }
+
+    /** @return the neighbor of flat index i (whose code is c) in the open direction d. */
+    int neighbor(int i, int c, int d) {
+        return i + _offset[d] + ((c >>> (4 + d)) & 1) * _wrapOffset[d];
+    }
+
+    /** Drops the codes; the next use rebuilds them. */
+    void invalidate() {
+        _stale = true;
+    }
+
+    /**
+     * Updates the table after cell i changed from old to v.
+     *
+     * @param i flat index
+     * @param old the previous value
+     * @param v the new value
+     */
+    void cellChanged(int i, int old, int v) {
+        boolean open = v != _obs;
+        if (_stale || (old != _obs) == open) return;
+        int h = _map.getHeight();
+        int x = i / h, y = i - x * h;
+        for (int d = 0; d < 4; d++) {
+            int nb = _map.neighbor(i, x, y, d);
+            if (nb < 0) continue;
+            int bit = 1 << ((d + 2) & 3); // The move from nb back to i.
+            _codes[nb] = (byte) (open ? (_codes[nb] | bit) : (_codes[nb] & ~bit));
+        }
+    }
+
+    // ----------------- private helpers -----------------
+
+    /** Rebuilds the codes if the table is stale. */
+    private void refresh() {
+        if (!_stale) return;
+        int w = _map.getWidth(), h = _map.getHeight(), n = w * h;
+        if (_codes.length != n) _codes = new byte[n];
+        _offset[0] = -1;
+        _offset[1] = -h;
+        _offset[2] = 1;
+        _offset[3] = h;
+        _wrapOffset[0] = h;
+        _wrapOffset[1] = n;
+        _wrapOffset[2] = -h;
+        _wrapOffset[3] = -n;
+        boolean cyclic = _map.isCyclic();
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                int i = x * h + y, code = 0;
+                if (cyclic) {
+                    if (y == 0) code |= 1 << 4;
+                    if (x == 0) code |= 1 << 5;
+                    if (y == h - 1) code |= 1 << 6;
+                    if (x == w - 1) code |= 1 << 7;
+                }
+                for (int d = 0; d < 4; d++) {
+                    int nb = _map.neighbor(i, x, y, d);
+                    if (nb >= 0 && _map.cell(nb) != _obs) code |= 1 << d;
+                }
+                _codes[i] = (byte) code;
+            }
+        }
+        _stale = false;
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && x < _map.getWidth() && y >= 0 && y < _map.getHeight();
+    }
+}
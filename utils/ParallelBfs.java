@@ -0,0 +1,144 @@
+package assignments.Ex3.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Level-synchronous multi-source BFS on a {@link ForkJoinPool}, for the distance fields of
+ * {@link Map#allDistance} on maps with millions of cells.
+ *
+ * Every BFS level is expanded by several tasks, each over a slice of the current frontier.
+ * A cell is claimed with a compare-and-set of its distance from -1, so exactly one task adds it
+ * to the next frontier; the tasks then hand their discoveries over in slice order.
+ * All the cells of a level get the same distance whichever task claims them, so the result
+ * is bit-identical to the sequential BFS. Levels smaller than {@link #MIN_PARALLEL_LEVEL}
+ * (the first and last levels of a search) are expanded on the calling thread.
+ *
+ * Bottom-up steps (scanning the unvisited cells for a parent in the frontier) are not used:
+ * a grid BFS frontier is a thin wavefront, never a large share of the cells, and a bottom-up
+ * step costs a scan of all of them.
+ */
+final class ParallelBfs {
+    private static final VarHandle DIST = MethodHandles.arrayElementVarHandle(int[].class);
+    /** Levels with fewer frontier cells are expanded sequentially. */
+    static final int MIN_PARALLEL_LEVEL = 1 << 10;
+    /** The smallest frontier slice given to one task. */
+    private static final int MIN_SLICE = 1 << 8;
+
+    private ParallelBfs() {}
+
+    /**
+     * Multi-source BFS distances.
+     *
+     * @param m the map
+     * @param src source indices (must be walkable), only the first count are used
+     * @param count number of sources
+     * @param obsColor obstacle value
+     * @param dist output distances, pre-filled with -1
+     * @param pool the pool running the level tasks
+     */
+    static void distances(Map m, int[] src, int count, int obsColor, int[] dist, ForkJoinPool pool) {
+        SearchWorkspace ws = SearchWorkspace.acquire(m.getWidth() * m.getHeight());
+        try {
+            int[] cur = ws.queue, next = ws.parent;
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                int s = src[i];
+                if (dist[s] != -1) continue;
+                dist[s] = 0;
+                cur[size++] = s;
+            }
+
+            int maxSlices = Math.max(1, pool.getParallelism() * 4);
+            int[][] found = new int[maxSlices][];
+            int[] foundSize = new int[maxSlices];
+            for (int level = 1; size > 0; level++) {
+                int nextSize;
+                if (size < MIN_PARALLEL_LEVEL) {
+                    nextSize = expand(m, obsColor, dist, cur, 0, size, level, next, false);
+                } else {
+                    int slices = Math.min(maxSlices, (size + MIN_SLICE - 1) / MIN_SLICE);
+                    pool.invoke(new Level(m, obsColor, dist, cur, size, level, found, foundSize, 0, slices, slices));
+                    nextSize = 0;
+                    for (int p = 0; p < slices; p++) {
+                        System.arraycopy(found[p], 0, next, nextSize, foundSize[p]);
+                        nextSize += foundSize[p];
+                    }
+                }
+                int[] t = cur;
+                cur = next;
+                next = t;
+                size = nextSize;
+            }
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Expands frontier[from..to) into out.
+     *
+     * @param atomic true if other threads claim cells concurrently
+     * @return the number of cells written to out
+     */
+    private static int expand(Map m, int obsColor, int[] dist, int[] frontier, int from, int to, int level,
+                              int[] out, boolean atomic) {
+        int h = m.getHeight();
+        int size = 0;
+        for (int j = from; j < to; j++) {
+            int cur = frontier[j];
+            int x = cur / h, y = cur - x * h;
+            for (int d = 0; d < 4; d++) {
+                int nb = m.neighbor(cur, x, y, d);
+                if (nb < 0 || dist[nb] != -1 || m.cell(nb) == obsColor) continue;
+                if (atomic) {
+                    if (!DIST.compareAndSet(dist, nb, -1, level)) continue;
+                } else {
+                    dist[nb] = level;
+                }
+                out[size++] = nb;
+            }
+        }
+        return size;
+    }
+
+    /** Expands the slices [lo, hi) of one level, splitting in halves down to single slices. */
+    @SuppressWarnings("serial") // Tasks live for one level and are never serialized.
+    private static final class Level extends RecursiveAction {
+        private final Map _m;
+        private final int _obs, _size, _level, _lo, _hi, _slices;
+        private final int[] _dist, _frontier, _foundSize;
+        private final int[][] _found;
+
+        Level(Map m, int obsColor, int[] dist, int[] frontier, int size, int level,
+              int[][] found, int[] foundSize, int lo, int hi, int slices) {
+            _m = m;
+            _obs = obsColor;
+            _dist = dist;
+            _frontier = frontier;
+            _size = size;
+            _level = level;
+            _found = found;
+            _foundSize = foundSize;
+            _lo = lo;
+            _hi = hi;
+            _slices = slices;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Level(_m, _obs, _dist, _frontier, _size, _level, _found, _foundSize, _lo, mid, _slices),
+                        new Level(_m, _obs, _dist, _frontier, _size, _level, _found, _foundSize, mid, _hi, _slices));
+                return;
+            }
+            int from = (int) ((long) _size * _lo / _slices), to = (int) ((long) _size * (_lo + 1) / _slices);
+            int need = 4 * (to - from);
+            if (_found[_lo] == null || _found[_lo].length < need) _found[_lo] = new int[need];
+            _foundSize[_lo] = expand(_m, _obs, _dist, _frontier, from, to, _level, _found[_lo], true);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package assignments.Ex3.utils;
+
+/**
+ * The non-BFS shortest path strategies of {@link Map} (see {@link PathStrategy}).
+ * All the searches work on flat cell indices and on the buffers of a {@link SearchWorkspace},
+ * and count the cells they expand in {@link SearchWorkspace#expanded}.
+ * The caller is responsible for the argument checks (both ends walkable and different).
+ */
+final class PathSearch {
+    private PathSearch() {}
+
+    /**
+     * A* search with the Manhattan distance to {@code dst} as heuristic.
+     * On a cyclic map each axis uses the shorter way around, so the heuristic stays admissible
+     * and consistent - the first time dst is popped its path is a shortest one.
+     *
+     * @param m the map
+     * @param src start index
+     * @param dst target index
+     * @param obsColor obstacle value
+     * @param ws a workspace started for this map
+     * @return the shortest path, or null if dst is unreachable
+     */
+    static Pixel2D[] aStar(Map m, int src, int dst, int obsColor, SearchWorkspace ws) {
+        int w = m.getWidth(), h = m.getHeight();
+        boolean cyclic = m.isCyclic();
+        int tx = dst / h, ty = dst - tx * h;
+        int[] g = ws.dist(), parent = ws.parent;
+
+        ws.mark(src);
+        g[src] = 0;
+        parent[src] = src;
+        int size = push(ws, 0, heuristic(src / h, src % h, tx, ty, w, h, cyclic), src);
+
+        while (size > 0) {
+            long top = ws.heap[0];
+            size = pop(ws.heap, size);
+            int cur = (int) top;
+            int x = cur / h, y = cur - x * h;
+            int gc = g[cur];
+            if (gc + heuristic(x, y, tx, ty, w, h, cyclic) != (int) (top >>> 32)) continue; // Stale entry.
+            if (cur == dst) return m.buildPath(src, dst, parent);
+            ws.expanded++;
+
+            int ng = gc + 1;
+            for (int d = 0; d < 4; d++) {
+                int nb = m.neighbor(cur, x, y, d);
+                if (nb < 0 || m.cell(nb) == obsColor) continue;
+                if (ws.isMarked(nb) && g[nb] <= ng) continue;
+                ws.mark(nb);
+                g[nb] = ng;
+                parent[nb] = cur;
+                int nx = wrap(x + Map.DX[d], w), ny = wrap(y + Map.DY[d], h);
+                size = push(ws, size, ng + heuristic(nx, ny, tx, ty, w, h, cyclic), nb);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bidirectional BFS: one BFS from each end, always expanding a whole level of the smaller
+     * frontier, until the two searches touch. Once they touch, the current level is finished
+     * and the shortest of the meeting edges found in it is used.
+     * Both queues share the workspace queue (forward from the front, backward from the back),
+     * and the dist buffer holds depth+1 for forward cells and -(depth+1) for backward cells.
+     *
+     * @param m the map
+     * @param src start index
+     * @param dst target index
+     * @param obsColor obstacle value
+     * @param ws a workspace started for this map
+     * @return the shortest path, or null if dst is unreachable
+     */
+    static Pixel2D[] bidirectional(Map m, int src, int dst, int obsColor, SearchWorkspace ws) {
+        int h = m.getHeight();
+        int n = m.getWidth() * h;
+        int[] q = ws.queue, parent = ws.parent, side = ws.dist();
+
+        ws.mark(src);
+        side[src] = 1;
+        parent[src] = src;
+        int fHead = 0, fTail = 0;
+        q[fTail++] = src;
+
+        ws.mark(dst);
+        side[dst] = -1;
+        parent[dst] = dst;
+        int bHead = n - 1, bTail = n - 1; // Backward queue occupies q[bTail+1 .. bHead], growing down.
+        q[bTail--] = dst;
+
+        int meetF = -1, meetB = -1, best = Integer.MAX_VALUE;
+        while (fHead < fTail && bHead > bTail) {
+            if (fTail - fHead <= bHead - bTail) {
+                int levelEnd = fTail;
+                while (fHead < levelEnd) {
+                    int cur = q[fHead++];
+                    ws.expanded++;
+                    int x = cur / h, y = cur - x * h;
+                    for (int d = 0; d < 4; d++) {
+                        int nb = m.neighbor(cur, x, y, d);
+                        if (nb < 0 || m.cell(nb) == obsColor) continue;
+                        if (!ws.isMarked(nb)) {
+                            ws.mark(nb);
+                            side[nb] = side[cur] + 1;
+                            parent[nb] = cur;
+                            q[fTail++] = nb;
+                        } else if (side[nb] < 0 && side[cur] - side[nb] - 1 < best) {
+                            best = side[cur] - side[nb] - 1;
+                            meetF = cur;
+                            meetB = nb;
+                        }
+                    }
+                }
+            } else {
+                int levelEnd = bTail;
+                while (bHead > levelEnd) {
+                    int cur = q[bHead--];
+                    ws.expanded++;
+                    int x = cur / h, y = cur - x * h;
+                    for (int d = 0; d < 4; d++) {
+                        int nb = m.neighbor(cur, x, y, d);
+                        if (nb < 0 || m.cell(nb) == obsColor) continue;
+                        if (!ws.isMarked(nb)) {
+                            ws.mark(nb);
+                            side[nb] = side[cur] - 1;
+                            parent[nb] = cur;
+                            q[bTail--] = nb;
+                        } else if (side[nb] > 0 && side[nb] - side[cur] - 1 < best) {
+                            best = side[nb] - side[cur] - 1;
+                            meetF = nb;
+                            meetB = cur;
+                        }
+                    }
+                }
+            }
+            if (meetF >= 0) break;
+        }
+        if (meetF < 0) return null;
+
+        Pixel2D[] path = new Pixel2D[best + 1];
+        int i = side[meetF] - 1;
+        for (int cur = meetF; ; cur = parent[cur]) {
+            path[i--] = m.pixelAt(cur);
+            if (cur == src) break;
+        }
+        i = side[meetF];
+        for (int cur = meetB; ; cur = parent[cur]) {
+            path[i++] = m.pixelAt(cur);
+            if (cur == dst) break;
+        }
+        return path;
+    }
+
+    // ----------------- private helpers -----------------
+
+    /** @return the (wrap-aware) Manhattan distance between (x,y) and (tx,ty). */
+    static int heuristic(int x, int y, int tx, int ty, int w, int h, boolean cyclic) {
+        int dx = Math.abs(x - tx), dy = Math.abs(y - ty);
+        if (cyclic) {
+            dx = Math.min(dx, w - dx);
+            dy = Math.min(dy, h - dy);
+        }
+        return dx + dy;
+    }
+
+    /** @return v moved back into [0,max) - v is at most one step outside. */
+    private static int wrap(int v, int max) {
+        if (v < 0) return max - 1;
+        if (v >= max) return 0;
+        return v;
+    }
+
+    /**
+     * Pushes (priority, cell) into the workspace heap.
+     *
+     * @return the new heap size
+     */
+    private static int push(SearchWorkspace ws, int size, int priority, int cell) {
+        return push(ws, size, ((long) priority << 32) | cell);
+    }
+
+    /**
+     * Pushes a packed key into the workspace heap (smaller keys are popped first).
+     *
+     * @return the new heap size
+     */
+    static int push(SearchWorkspace ws, int size, long key) {
+        long[] heap = ws.heap(size + 1);
+        int i = size;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heap[p] <= key) break;
+            heap[i] = heap[p];
+            i = p;
+        }
+        heap[i] = key;
+        return size + 1;
+    }
+
+    /**
+     * Removes the smallest key (heap[0]) from the heap.
+     *
+     * @return the new heap size
+     */
+    static int pop(long[] heap, int size) {
+        size--;
+        long key = heap[size];
+        int i = 0;
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= size) break;
+            if (c + 1 < size && heap[c + 1] < heap[c]) c++;
+            if (heap[c] >= key) break;
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = key;
+        return size;
+    }
+}
@@ -0,0 +1,17 @@
+package assignments.Ex3.utils;
+
+/**
+ * The search algorithms available behind {@link Map#shortestPath(Pixel2D, Pixel2D, int)}.
+ * All of them return a shortest path (4-neighbors, cyclic borders respected); they differ
+ * only in how many cells they expand on the way.
+ */
+public enum PathStrategy {
+    /** Plain breadth-first search from the start (the default). */
+    BFS,
+    /** A* with a Manhattan distance heuristic (wrap-aware on cyclic maps). */
+    A_STAR,
+    /** Breadth-first search from both ends, always expanding the smaller frontier. */
+    BIDIRECTIONAL,
+    /** Jump Point Search for 4-connected grids: A* over jump points only (best on large open maps). */
+    JUMP_POINT
+}
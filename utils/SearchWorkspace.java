@@ -0,0 +1,119 @@
+package assignments.Ex3.utils;
+
+import java.util.Arrays;
+
+/**
+ * Scratch buffers shared by the BFS searches of {@link Map}: a queue, a parent array and
+ * an epoch-stamped visited array.
+ * A cell is "visited" in the current search iff {@code mark[i] == epoch}, so starting a new
+ * search only increments the epoch - the buffers are never cleared between searches.
+ * The buffers grow to the largest map seen and are then reused, so back-to-back searches
+ * (e.g. several queries inside one move() call) allocate nothing.
+ *
+ * Every thread owns one workspace (see {@link #acquire(int)}). A search that starts while
+ * the thread's workspace is already in use (a nested search) gets a private one instead.
+ */
+final class SearchWorkspace {
+    private static final ThreadLocal<SearchWorkspace> CURRENT = ThreadLocal.withInitial(SearchWorkspace::new);
+
+    /** FIFO queue of flat cell indices. */
+    int[] queue = new int[0];
+    /** parent[i] is the predecessor of i; valid only when i is marked. */
+    int[] parent = new int[0];
+    /** Binary min-heap of packed (priority, cell) keys, grown on demand (see {@link #heap(int)}). */
+    long[] heap = new long[16];
+    /** Number of cells expanded by the last search (diagnostics). */
+    int expanded;
+    /** Number of cells queued by the last {@link Traversal}: queue[0..queued) in BFS order. */
+    int queued;
+    private int[] _dist = new int[0];
+    private int[] _aux = new int[0];
+    private int[] _mark = new int[0];
+    private int _epoch = 0;
+    private boolean _inUse = false;
+
+    /**
+     * Borrows the current thread's workspace and starts a new search on it.
+     * Must be paired with {@link #release()} (in a finally block).
+     *
+     * @param n number of cells of the searched map
+     * @return a workspace with room for n cells and no marked cell
+     */
+    static SearchWorkspace acquire(int n) {
+        SearchWorkspace ws = CURRENT.get();
+        if (ws._inUse) ws = new SearchWorkspace();
+        ws._inUse = true;
+        ws.begin(n);
+        return ws;
+    }
+
+    /** Returns this workspace to its thread. */
+    void release() {
+        _inUse = false;
+    }
+
+    /**
+     * Starts a new search over n cells: grows the buffers if needed and un-marks all cells.
+     *
+     * @param n number of cells of the searched map
+     */
+    void begin(int n) {
+        if (queue.length < n) {
+            queue = new int[n];
+            parent = new int[n];
+            _mark = new int[n];
+            _dist = new int[0];
+            _aux = new int[0];
+            _epoch = 0;
+        }
+        expanded = 0;
+        _epoch++;
+        if (_epoch == Integer.MAX_VALUE) { // Stamps are about to repeat - clear once and start over.
+            Arrays.fill(_mark, 0);
+            _epoch = 1;
+        }
+    }
+
+    /**
+     * A per-cell int buffer (e.g. g-costs or depths), allocated on first use only since
+     * plain BFS does not need it. Like parent, an entry is valid only when its cell is marked.
+     *
+     * @return the distance buffer, with room for the current capacity
+     */
+    int[] dist() {
+        if (_dist.length < queue.length) _dist = new int[queue.length];
+        return _dist;
+    }
+
+    /**
+     * A second per-cell int buffer for searches that keep extra state per cell
+     * (e.g. arrival directions), allocated on first use only.
+     *
+     * @return the auxiliary buffer, with room for the current capacity
+     */
+    int[] aux() {
+        if (_aux.length < queue.length) _aux = new int[queue.length];
+        return _aux;
+    }
+
+    /**
+     * Makes sure the heap can hold at least size keys (keeping its content).
+     *
+     * @param size the needed capacity
+     * @return the (possibly re-allocated) heap
+     */
+    long[] heap(int size) {
+        if (heap.length < size) heap = Arrays.copyOf(heap, Math.max(size, heap.length * 2));
+        return heap;
+    }
+
+    /** @return true iff cell i was marked in the current search. */
+    boolean isMarked(int i) {
+        return _mark[i] == _epoch;
+    }
+
+    /** Marks cell i as visited in the current search. */
+    void mark(int i) {
+        _mark[i] = _epoch;
+    }
+}
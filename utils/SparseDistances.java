@@ -0,0 +1,116 @@
+package assignments.Ex3.utils;
+
+import java.util.Arrays;
+
+/**
+ * The result of a depth-limited BFS (see {@link Map#allDistance(Pixel2D, int, int)}): the cells
+ * within the limit and their distances, stored sparsely so its memory is proportional to the
+ * explored ball and not to the map.
+ *
+ * The cells are kept in BFS order (so by non-decreasing distance) as flat map indices, with an
+ * open-addressing hash table from flat index to position for O(1) {@link #getDistance} lookups.
+ */
+public final class SparseDistances {
+    private final int _h, _maxDepth;
+    private final int[] _cells, _dist;
+    /** Open addressing: position+1 of the cell hashed to each slot, 0 for empty slots. */
+    private final int[] _slots;
+
+    /**
+     * @param h map height (to turn flat indices back into pixels)
+     * @param maxDepth the depth limit of the search
+     * @param cells flat indices in BFS order, only the first size are used
+     * @param dist distances of the cells
+     * @param size number of cells
+     */
+    SparseDistances(int h, int maxDepth, int[] cells, int[] dist, int size) {
+        _h = h;
+        _maxDepth = maxDepth;
+        _cells = Arrays.copyOf(cells, size);
+        _dist = Arrays.copyOf(dist, size);
+        _slots = new int[Integer.highestOneBit(Math.max(1, size) * 2) * 2];
+        int mask = _slots.length - 1;
+        for (int k = 0; k < size; k++) {
+            int s = slot(_cells[k], mask);
+            while (_slots[s] != 0) s = (s + 1) & mask;
+            _slots[s] = k + 1;
+        }
+    }
+
+    /**
+     * @param p pixel
+     * @return the distance of p from the start, or -1 if p is farther than the limit,
+     * unreachable, an obstacle or outside the map
+     */
+    public int getDistance(Pixel2D p) {
+        if (p == null) return -1;
+        return getDistance(p.getX(), p.getY());
+    }
+
+    /**
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return same as {@link #getDistance(Pixel2D)}
+     */
+    public int getDistance(int x, int y) {
+        if (x < 0 || y < 0 || y >= _h) return -1;
+        long i = (long) x * _h + y;
+        if (i > Integer.MAX_VALUE) return -1;
+        int k = find((int) i);
+        return (k < 0) ? -1 : _dist[k];
+    }
+
+    /**
+     * @param p pixel
+     * @return true iff p is within the limit
+     */
+    public boolean contains(Pixel2D p) {
+        return getDistance(p) >= 0;
+    }
+
+    /**
+     * @return the number of cells within the limit (the start included)
+     */
+    public int size() {
+        return _cells.length;
+    }
+
+    /**
+     * @param k cell number, 0..size()-1 (in BFS order)
+     * @return the k-th cell
+     */
+    public Pixel2D getCell(int k) {
+        int x = _cells[k] / _h;
+        return new Index2D(x, _cells[k] - x * _h);
+    }
+
+    /**
+     * @param k cell number, 0..size()-1 (in BFS order)
+     * @return the distance of the k-th cell (non-decreasing in k)
+     */
+    public int getCellDistance(int k) {
+        return _dist[k];
+    }
+
+    /**
+     * @return the depth limit of the search
+     */
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+
+    /** @return the position of flat index i, or -1 if it is not in the ball. */
+    private int find(int i) {
+        int mask = _slots.length - 1;
+        for (int s = slot(i, mask); _slots[s] != 0; s = (s + 1) & mask) {
+            int k = _slots[s] - 1;
+            if (_cells[k] == i) return k;
+        }
+        return -1;
+    }
+
+    private static int slot(int i, int mask) {
+        int z = i * 0x9E3779B9;
+        return (z ^ (z >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,137 @@
+package assignments.Ex3.utils;
+
+import java.util.function.IntPredicate;
+
+/**
+ * The BFS loop behind the searches of {@link Map}: shortest paths, distance fields,
+ * depth-limited balls and {@link Map#traverse}. The loop is written once and keeps the fast paths:
+ * 1. Int indices only, and the epoch-stamped marks of {@link SearchWorkspace}.
+ * 2. The {@link NeighborTable} of the map, when it has one for the obstacle value.
+ * 3. Visiting a cell when it is first reached (not when it is expanded), so a search that
+ *    stops at its target does not expand the rest of the target's level.
+ * 4. The common stop rules - a target cell, a depth limit - and the distance output are
+ *    built in, so the searches that need nothing else run without a {@link CellVisitor}.
+ *    A visitor call per cell is cheap while one visitor class goes through the loop, but
+ *    once many do the JIT can no longer inline it (measured 1.5x slower on a 700x700 BFS).
+ * After a run, {@code ws.parent[i]} is the cell that reached i (itself for the start cells),
+ * for every marked cell i - the visitors may read it for the cell being visited - and
+ * {@code ws.queue[0..ws.queued)} holds the queued cells in BFS order.
+ *
+ * The bit-packed and parallel BFS of {@link WalkableMask} and {@link ParallelBfs} are separate:
+ * they move whole words or frontier slices at a time and have no per-cell callback. So are
+ * {@link Map#nearestPath} and {@link Map#shortestPaths}: their per-cell rules would need a
+ * visitor, which costs them 20-35% on the hot no-target scans.
+ */
+final class Traversal {
+    /** Depth limit meaning "no limit". */
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private Traversal() {}
+
+    /**
+     * Runs a BFS over a map, steered by a visitor.
+     *
+     * @param m the map
+     * @param src start indices (walkable, duplicates allowed), only the first count are used
+     * @param count number of starts
+     * @param obsColor obstacle value, used when walkable is null
+     * @param walkable a predicate over the cell values, or null for "not obsColor"
+     * @param visitor called for every reached cell, the starts first (depth 0)
+     * @param ws a workspace started for this map
+     * @return the cell whose visit returned STOP, or -1 if the traversal ran out of cells
+     */
+    static int run(Map m, int[] src, int count, int obsColor, IntPredicate walkable, CellVisitor visitor,
+                   SearchWorkspace ws) {
+        return search(m, src, count, obsColor, walkable, visitor, -1, UNLIMITED, null, ws);
+    }
+
+    /**
+     * Runs a BFS over a map.
+     *
+     * @param m the map
+     * @param src start indices (walkable, duplicates allowed), only the first count are used
+     * @param count number of starts
+     * @param obsColor obstacle value, used when walkable is null
+     * @param walkable a predicate over the cell values, or null for "not obsColor"
+     * @param visitor called for every reached cell, the starts first (depth 0); null to
+     *                expand every cell
+     * @param target the search stops when it reaches this cell (-1 for none)
+     * @param maxDepth cells at this distance are reached but not expanded ({@link #UNLIMITED} for none)
+     * @param dist if not null, receives the distance of every reached cell
+     * @param ws a workspace started for this map
+     * @return the cell where the search stopped (the target, or where the visitor returned STOP),
+     * or -1 if it ran out of cells
+     */
+    static int search(Map m, int[] src, int count, int obsColor, IntPredicate walkable, CellVisitor visitor,
+                      int target, int maxDepth, int[] dist, SearchWorkspace ws) {
+        int w = m.getWidth(), h = m.getHeight();
+        int[] q = ws.queue, parent = ws.parent;
+        int tail = 0, stop = -1;
+        for (int k = 0; k < count && stop < 0; k++) {
+            int s = src[k];
+            if (ws.isMarked(s)) continue;
+            ws.mark(s);
+            parent[s] = s;
+            if (dist != null) dist[s] = 0;
+            int r = CellVisitor.CONTINUE;
+            if (visitor != null) {
+                int x = s / h;
+                r = visitor.onVisit(x, s - x * h, 0);
+            }
+            if (r == CellVisitor.STOP || s == target) stop = s;
+            else if (r == CellVisitor.CONTINUE) q[tail++] = s;
+        }
+
+        NeighborTable table = (walkable == null) ? m.neighborsFor(obsColor) : null;
+        byte[] codes = (table != null) ? table.codes() : null;
+        int[] offset = (table != null) ? table.offsets() : null, wrapOffset = (table != null) ? table.wrapOffsets() : null;
+        int head = 0, levelEnd = tail, depth = 1;
+        while (stop < 0 && head < tail) {
+            if (head == levelEnd) {
+                levelEnd = tail;
+                depth++;
+            }
+            if (depth > maxDepth) break;
+            int cur = q[head++];
+            ws.expanded++;
+            int x = 0, y = 0;
+            if (codes == null || visitor != null) {
+                x = cur / h;
+                y = cur - x * h;
+            }
+            int c = (codes != null) ? codes[cur] : 0xF;
+            for (int d = 0; d < 4; d++) {
+                int nb;
+                if (codes != null) {
+                    if ((c & (1 << d)) == 0) continue;
+                    nb = cur + offset[d] + ((c >>> (4 + d)) & 1) * wrapOffset[d];
+                    if (ws.isMarked(nb)) continue;
+                } else {
+                    nb = m.neighbor(cur, x, y, d);
+                    if (nb < 0 || ws.isMarked(nb)) continue;
+                    int v = m.cell(nb);
+                    if ((walkable == null) ? v == obsColor : !walkable.test(v)) continue;
+                }
+                ws.mark(nb);
+                parent[nb] = cur;
+                if (dist != null) dist[nb] = depth;
+                int r = CellVisitor.CONTINUE;
+                if (visitor != null) {
+                    int nx = x + Map.DX[d], ny = y + Map.DY[d];
+                    if (nx < 0) nx += w;
+                    else if (nx >= w) nx -= w;
+                    if (ny < 0) ny += h;
+                    else if (ny >= h) ny -= h;
+                    r = visitor.onVisit(nx, ny, depth);
+                }
+                if (r == CellVisitor.STOP || nb == target) {
+                    stop = nb;
+                    break;
+                }
+                if (r == CellVisitor.CONTINUE) q[tail++] = nb;
+            }
+        }
+        ws.queued = tail;
+        return stop;
+    }
+}
@@ -0,0 +1,298 @@
+package assignments.Ex3.utils;
+
+/**
+ * A bit-packed walkable mask of a {@link Map}: one bit per cell, 64 cells per long.
+ * The bits follow the layout of Map - column by column, with each column stored in
+ * {@code ceil(height/64)} words (bit y%64 of word y/64 is cell (x,y)); the padding bits
+ * at the end of a column are always 0.
+ *
+ * The mask takes 1/32 of the memory of the int cells, and its searches move whole words at once:
+ * 1. {@link #reachableFrom(Pixel2D)} saturates a column in a few word passes
+ *    (a carry through {@code walkable + seed} runs along a whole vertical run of walkable cells),
+ *    and only re-visits the columns that got new seeds from a neighbor column.
+ * 2. {@link #distances(int[], int, int[])} advances the BFS frontier a word at a time
+ *    (shifts inside the column, plain OR to the neighbor columns) and touches only non-empty
+ *    frontier words, so each level costs O(frontier/64) word operations.
+ * The mask is a snapshot: it does not follow later changes of the map.
+ */
+public final class WalkableMask {
+    private final int _w, _h;
+    /** Words per column. */
+    private final int _k;
+    private final boolean _cyclic;
+    private final long[] _bits;
+
+    private WalkableMask(int w, int h, boolean cyclic) {
+        _w = w;
+        _h = h;
+        _k = (h + 63) >>> 6;
+        _cyclic = cyclic;
+        _bits = new long[w * _k];
+    }
+
+    /**
+     * @param m the map
+     * @param obsColor obstacle value
+     * @return a mask of the cells of m which are not obsColor
+     */
+    static WalkableMask of(Map m, int obsColor) {
+        return build(m, obsColor, false);
+    }
+
+    /**
+     * @param m the map
+     * @param color a cell value
+     * @return a mask of the cells of m which hold exactly color
+     */
+    static WalkableMask ofColor(Map m, int color) {
+        return build(m, color, true);
+    }
+
+    private static WalkableMask build(Map m, int color, boolean equal) {
+        int w = m.getWidth(), h = m.getHeight();
+        WalkableMask ans = new WalkableMask(w, h, m.isCyclic());
+        long[] bits = ans._bits;
+        for (int x = 0; x < w; x++) {
+            int base = x * ans._k;
+            for (int k = 0; k < ans._k; k++) {
+                int count = Math.min(64, h - (k << 6));
+                long word = m.equalBits(x * h + (k << 6), count, color);
+                // Keep the padding bits past the end of the column at 0.
+                bits[base + k] = equal ? word : ~word & (-1L >>> (64 - count));
+            }
+        }
+        return ans;
+    }
+
+    /** @return the mask width (x dimension). */
+    public int getWidth() {
+        return _w;
+    }
+
+    /** @return the mask height (y dimension). */
+    public int getHeight() {
+        return _h;
+    }
+
+    /** @return true iff the searches of this mask wrap around the borders. */
+    public boolean isCyclic() {
+        return _cyclic;
+    }
+
+    /**
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return true iff (x,y) is inside the mask and its bit is set
+     */
+    public boolean contains(int x, int y) {
+        if (x < 0 || x >= _w || y < 0 || y >= _h) return false;
+        return (_bits[x * _k + (y >>> 6)] & (1L << y)) != 0;
+    }
+
+    /** @return the number of set cells. */
+    public int count() {
+        int ans = 0;
+        for (long word : _bits) ans += Long.bitCount(word);
+        return ans;
+    }
+
+    /**
+     * Computes the 4-connected component of {@code start} inside this mask.
+     *
+     * @param start start pixel
+     * @return a new mask of the cells reachable from start (empty if start is not set)
+     * @throws RuntimeException if start is null
+     */
+    public WalkableMask reachableFrom(Pixel2D start) {
+        if (start == null) throw new RuntimeException("Pixel2D is null");
+        WalkableMask ans = new WalkableMask(_w, _h, _cyclic);
+        if (!contains(start.getX(), start.getY())) return ans;
+
+        long[] seen = ans._bits;
+        int x0 = start.getX(), y0 = start.getY();
+        seen[x0 * _k + (y0 >>> 6)] = 1L << y0;
+
+        // Circular queue of the columns holding unsaturated seeds; each column is queued at most once.
+        int[] queue = new int[_w];
+        boolean[] queued = new boolean[_w];
+        int head = 0, size = 1;
+        queue[0] = x0;
+        queued[x0] = true;
+        while (size > 0) {
+            int x = queue[head];
+            head = (head + 1 == _w) ? 0 : head + 1;
+            size--;
+            queued[x] = false;
+            saturateColumn(seen, x * _k);
+            for (int side = -1; side <= 1; side += 2) {
+                int nx = x + side;
+                if (nx < 0 || nx >= _w) {
+                    if (!_cyclic) continue;
+                    nx = (nx < 0) ? _w - 1 : 0;
+                }
+                if (spread(seen, x * _k, nx * _k) && !queued[nx]) {
+                    queued[nx] = true;
+                    int tail = head + size;
+                    queue[(tail >= _w) ? tail - _w : tail] = nx;
+                    size++;
+                }
+            }
+        }
+        return ans;
+    }
+
+    // ----------------- package-private (used by Map) -----------------
+
+    /** @return the raw words, column by column (see the class comment). */
+    long[] words() {
+        return _bits;
+    }
+
+    /** @return the number of words per column. */
+    int wordsPerColumn() {
+        return _k;
+    }
+
+    /**
+     * Level-synchronous multi-source BFS over the mask.
+     * dist uses the flat index of {@link Map} (x*height + y) and must be pre-filled with -1;
+     * the sources must be set cells.
+     *
+     * @param src source flat indices, only the first count are used
+     * @param count number of sources
+     * @param dist output distances, -1 where unreachable
+     */
+    void distances(int[] src, int count, int[] dist) {
+        int n = _bits.length;
+        long[] seen = new long[n], cur = new long[n], next = new long[n];
+        int[] curList = new int[n], nextList = new int[n];
+        int curSize = 0;
+        for (int i = 0; i < count; i++) {
+            int x = src[i] / _h, y = src[i] - x * _h;
+            int wi = x * _k + (y >>> 6);
+            long bit = 1L << y;
+            if ((seen[wi] & bit) != 0) continue;
+            if (cur[wi] == 0) curList[curSize++] = wi;
+            seen[wi] |= bit;
+            cur[wi] |= bit;
+            dist[src[i]] = 0;
+        }
+
+        int lastWord = _k - 1, lastBit = (_h - 1) & 63;
+        for (int level = 1; curSize > 0; level++) {
+            int nextSize = 0;
+            for (int j = 0; j < curSize; j++) {
+                int wi = curList[j];
+                long f = cur[wi];
+                cur[wi] = 0;
+                int x = wi / _k, k = wi - x * _k;
+                // Same word: one step up and one step down inside the column.
+                nextSize = add(next, nextList, nextSize, wi, (f << 1) | (f >>> 1));
+                // Carries between the words of the column (and around it when cyclic).
+                if (k < lastWord) nextSize = add(next, nextList, nextSize, wi + 1, f >>> 63);
+                if (k > 0) nextSize = add(next, nextList, nextSize, wi - 1, (f & 1) << 63);
+                if (_cyclic) {
+                    if (k == lastWord && ((f >>> lastBit) & 1) != 0) nextSize = add(next, nextList, nextSize, wi - lastWord, 1L);
+                    if (k == 0 && (f & 1) != 0) nextSize = add(next, nextList, nextSize, wi + lastWord, 1L << lastBit);
+                }
+                // Neighbor columns.
+                if (x > 0) nextSize = add(next, nextList, nextSize, wi - _k, f);
+                else if (_cyclic) nextSize = add(next, nextList, nextSize, wi + (_w - 1) * _k, f);
+                if (x < _w - 1) nextSize = add(next, nextList, nextSize, wi + _k, f);
+                else if (_cyclic) nextSize = add(next, nextList, nextSize, wi - (_w - 1) * _k, f);
+            }
+
+            curSize = 0;
+            for (int j = 0; j < nextSize; j++) {
+                int wi = nextList[j];
+                long fresh = next[wi] & _bits[wi] & ~seen[wi];
+                next[wi] = 0;
+                if (fresh == 0) continue;
+                seen[wi] |= fresh;
+                cur[wi] = fresh;
+                curList[curSize++] = wi;
+                int x = wi / _k;
+                int base = x * _h + ((wi - x * _k) << 6);
+                for (long b = fresh; b != 0; b &= b - 1) {
+                    dist[base + Long.numberOfTrailingZeros(b)] = level;
+                }
+            }
+        }
+    }
+
+    // ----------------- private helpers -----------------
+
+    /** ORs bits into next[wi], listing wi the first time it becomes non-zero. */
+    private static int add(long[] next, int[] list, int size, int wi, long bits) {
+        if (bits == 0) return size;
+        if (next[wi] == 0) list[size++] = wi;
+        next[wi] |= bits;
+        return size;
+    }
+
+    /**
+     * Grows the seen bits of one column along its vertical runs of set cells,
+     * until every run holding a seen cell is fully seen.
+     *
+     * @param seen the seen bits
+     * @param base the index of the column's first word
+     */
+    private void saturateColumn(long[] seen, int base) {
+        int last = base + _k - 1, lastBit = (_h - 1) & 63;
+        while (true) {
+            long carry = 0;
+            for (int i = base; i <= last; i++) {
+                long u = upFill(_bits[i], seen[i] | (carry & _bits[i]));
+                seen[i] = u;
+                carry = u >>> 63;
+            }
+            carry = 0;
+            for (int i = last; i >= base; i--) {
+                long d = downFill(_bits[i], seen[i] | ((carry << 63) & _bits[i]));
+                seen[i] = d;
+                carry = d & 1;
+            }
+            if (!_cyclic) return;
+            // A run touching both ends of the column continues around it.
+            boolean top = ((seen[last] >>> lastBit) & 1) != 0, bottom = (seen[base] & 1) != 0;
+            if (top && !bottom && (_bits[base] & 1) != 0) seen[base] |= 1;
+            else if (bottom && !top && ((_bits[last] >>> lastBit) & 1) != 0) seen[last] |= 1L << lastBit;
+            else return;
+        }
+    }
+
+    /**
+     * Seeds the column at {@code to} with the seen cells of the column at {@code from}.
+     *
+     * @return true iff a new cell was seeded
+     */
+    private boolean spread(long[] seen, int from, int to) {
+        boolean ans = false;
+        for (int k = 0; k < _k; k++) {
+            long s = seen[from + k] & _bits[to + k] & ~seen[to + k];
+            if (s != 0) {
+                seen[to + k] |= s;
+                ans = true;
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * Extends every seed towards the higher bits, to the end of its run of set bits:
+     * adding the seed to the run carries through it, so {@code (w + s) ^ w} flips exactly
+     * the cells from the lowest seed of each run up to one past its end.
+     *
+     * @param w the set (walkable) bits
+     * @param s the seeds (a subset of w)
+     * @return s extended to the high end of each run
+     */
+    private static long upFill(long w, long s) {
+        return (((w + s) ^ w) & w) | s;
+    }
+
+    /** Same as {@link #upFill(long, long)} towards the lower bits. */
+    private static long downFill(long w, long s) {
+        return Long.reverse(upFill(Long.reverse(w), Long.reverse(s)));
+    }
+}